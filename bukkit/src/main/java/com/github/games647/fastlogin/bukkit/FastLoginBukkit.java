@@ -36,6 +36,7 @@ import com.github.games647.fastlogin.bukkit.task.DelayedAuthHook;
 import com.github.games647.fastlogin.core.CommonUtil;
 import com.github.games647.fastlogin.core.PremiumStatus;
 import com.github.games647.fastlogin.core.shared.FastLoginCore;
+import com.github.games647.fastlogin.core.shared.InFlightLogins;
 import com.github.games647.fastlogin.core.shared.PlatformPlugin;
 
 import io.papermc.lib.PaperLib;
@@ -59,7 +60,8 @@ import org.slf4j.Logger;
 public class FastLoginBukkit extends JavaPlugin implements PlatformPlugin<CommandSender> {
 
     //1 minutes should be enough as a timeout for bad internet connection (Server, Client and Mojang)
-    private final ConcurrentMap<String, BukkitLoginSession> loginSession = CommonUtil.buildCache(1, -1);
+    private final ConcurrentMap<String, BukkitLoginSession> loginSession;
+    private final InFlightLogins<String> inFlightLogins;
     private final Map<UUID, PremiumStatus> premiumPlayers = new ConcurrentHashMap<>();
     private final Logger logger;
 
@@ -73,6 +75,8 @@ public class FastLoginBukkit extends JavaPlugin implements PlatformPlugin<Comman
     public FastLoginBukkit() {
         this.logger = CommonUtil.createLoggerFromJDK(getLogger());
         this.scheduler = new BukkitScheduler(this, logger, getThreadFactory());
+        this.loginSession = CommonUtil.buildCache(scheduler.getTimer(), 1, -1);
+        this.inFlightLogins = new InFlightLogins<>(scheduler);
     }
 
     @Override
@@ -166,6 +170,13 @@ public class FastLoginBukkit extends JavaPlugin implements PlatformPlugin<Comman
         return loginSession;
     }
 
+    /**
+     * @return pending login work keyed by the session id
+     */
+    public InFlightLogins<String> getInFlightLogins() {
+        return inFlightLogins;
+    }
+
     public BukkitLoginSession getSession(InetSocketAddress addr) {
         String id = getSessionId(addr);
         return loginSession.get(id);
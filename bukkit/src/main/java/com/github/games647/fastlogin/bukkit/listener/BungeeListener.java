@@ -28,15 +28,19 @@ package com.github.games647.fastlogin.bukkit.listener;
 import com.github.games647.fastlogin.bukkit.BukkitLoginSession;
 import com.github.games647.fastlogin.bukkit.FastLoginBukkit;
 import com.github.games647.fastlogin.bukkit.task.ForceLoginTask;
+import com.github.games647.fastlogin.core.AsyncScheduler.WorkKind;
 import com.github.games647.fastlogin.core.PremiumStatus;
 import com.github.games647.fastlogin.core.hooks.AuthPlugin;
 import com.github.games647.fastlogin.core.message.LoginActionMessage;
 import com.github.games647.fastlogin.core.message.LoginActionMessage.Type;
+import com.github.games647.fastlogin.core.shared.LoginPipeline.Stage;
 import com.google.common.io.ByteArrayDataInput;
 import com.google.common.io.ByteStreams;
 
 import java.net.InetSocketAddress;
 import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
@@ -133,7 +137,12 @@ public class BungeeListener implements PluginMessageListener {
         plugin.getLog().info("Delaying force login until join event fired?: {}", result);
         if (result) {
             Runnable forceLoginTask = new ForceLoginTask(plugin.getCore(), player, session);
-            Bukkit.getScheduler().runTaskAsynchronously(plugin, forceLoginTask);
+            Executor executor = plugin.getScheduler().getExecutor(WorkKind.BLOCKING);
+            try {
+                plugin.getCore().getPipeline().get(Stage.FORCE_LOGIN).run(forceLoginTask, executor);
+            } catch (RejectedExecutionException rejectedEx) {
+                plugin.getLog().warn("Too many pending force logins - skipping the auto login of {}", player);
+            }
         }
     }
 }
@@ -28,6 +28,11 @@ package com.github.games647.fastlogin.bukkit.listener;
 import com.github.games647.fastlogin.bukkit.BukkitLoginSession;
 import com.github.games647.fastlogin.bukkit.FastLoginBukkit;
 import com.github.games647.fastlogin.bukkit.task.ForceLoginTask;
+import com.github.games647.fastlogin.core.AsyncScheduler.WorkKind;
+import com.github.games647.fastlogin.core.shared.LoginPipeline.Stage;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
@@ -75,7 +80,12 @@ public class ConnectionListener implements Listener {
                 plugin.getLog().info("No on-going login session for player: {} with ID {}", player, sessionId);
             } else {
                 Runnable forceLoginTask = new ForceLoginTask(plugin.getCore(), player, session);
-                Bukkit.getScheduler().runTaskAsynchronously(plugin, forceLoginTask);
+                Executor executor = plugin.getScheduler().getExecutor(WorkKind.BLOCKING);
+                try {
+                    plugin.getCore().getPipeline().get(Stage.FORCE_LOGIN).run(forceLoginTask, executor);
+                } catch (RejectedExecutionException rejectedEx) {
+                    plugin.getLog().warn("Too many pending force logins - skipping the auto login of {}", player);
+                }
             }
 
             plugin.getBungeeManager().markJoinEventFired(player);
@@ -32,16 +32,19 @@ import com.github.games647.fastlogin.bukkit.FastLoginBukkit;
 import com.github.games647.fastlogin.bukkit.event.BukkitFastLoginPreLoginEvent;
 import com.github.games647.fastlogin.core.StoredProfile;
 import com.github.games647.fastlogin.core.shared.JoinManagement;
+import com.github.games647.fastlogin.core.shared.LoginDeadline;
+import com.github.games647.fastlogin.core.shared.LoginSession;
 import com.github.games647.fastlogin.core.shared.event.FastLoginPreLoginEvent;
 
 import java.security.PublicKey;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 
-public class NameCheckTask extends JoinManagement<Player, CommandSender, ProtocolLibLoginSource>
-        implements Runnable {
+public class NameCheckTask extends JoinManagement<Player, CommandSender, ProtocolLibLoginSource> {
 
     private final FastLoginBukkit plugin;
     private final PacketEvent packetEvent;
@@ -51,9 +54,10 @@ public class NameCheckTask extends JoinManagement<Player, CommandSender, Protoco
 
     private final Player player;
     private final String username;
+    private final LoginDeadline deadline;
 
     public NameCheckTask(FastLoginBukkit plugin, PacketEvent packetEvent, Random random,
-                         Player player, String username, PublicKey publicKey) {
+                         Player player, String username, PublicKey publicKey, LoginDeadline deadline) {
         super(plugin.getCore(), plugin.getCore().getAuthPluginHook());
 
         this.plugin = plugin;
@@ -62,15 +66,24 @@ public class NameCheckTask extends JoinManagement<Player, CommandSender, Protoco
         this.random = random;
         this.player = player;
         this.username = username;
+        this.deadline = deadline;
+    }
+
+    /**
+     * @param executor runs the blocking database and auth plugin calls
+     * @return completes after the login packet is released
+     */
+    public CompletableFuture<Void> check(Executor executor) {
+        ProtocolLibLoginSource source = new ProtocolLibLoginSource(packetEvent, player, random, publicKey);
+        return super.onLoginAsync(username, source, deadline, executor).whenComplete((result, error) ->
+                ProtocolLibrary.getProtocolManager().getAsynchronousManager().signalPacketTransmission(packetEvent));
     }
 
     @Override
-    public void run() {
-        try {
-            super.onLogin(username, new ProtocolLibLoginSource(packetEvent, player, random, publicKey));
-        } finally {
-            ProtocolLibrary.getProtocolManager().getAsynchronousManager().signalPacketTransmission(packetEvent);
-        }
+    protected <T> CompletableFuture<T> track(ProtocolLibLoginSource source, CompletableFuture<T> future) {
+        // drop the queued database and Mojang steps if the player disconnects
+        plugin.getInFlightLogins().track(plugin.getSessionId(player.getAddress()), future);
+        return future;
     }
 
     @Override
@@ -107,8 +120,9 @@ public class NameCheckTask extends JoinManagement<Player, CommandSender, Protoco
     }
 
     @Override
-    public void startCrackedSession(ProtocolLibLoginSource source, StoredProfile profile, String username) {
+    public LoginSession startCrackedSession(ProtocolLibLoginSource source, StoredProfile profile, String username) {
         BukkitLoginSession loginSession = new BukkitLoginSession(username, profile);
         plugin.putSession(player.getAddress(), loginSession);
+        return loginSession;
     }
 }
@@ -30,11 +30,23 @@ import com.comphenix.protocol.ProtocolLibrary;
 import com.comphenix.protocol.events.PacketAdapter;
 import com.comphenix.protocol.events.PacketContainer;
 import com.comphenix.protocol.events.PacketEvent;
+import com.comphenix.protocol.injector.server.TemporaryPlayerFactory;
+import com.comphenix.protocol.reflect.FuzzyReflection;
 import com.github.games647.fastlogin.bukkit.FastLoginBukkit;
+import com.github.games647.fastlogin.core.AsyncScheduler.WorkKind;
+import com.github.games647.fastlogin.core.LoginAdmission;
 import com.github.games647.fastlogin.core.RateLimiter;
+import com.github.games647.fastlogin.core.shared.LoginDeadline;
+import com.github.games647.fastlogin.core.shared.LoginPipeline.Stage;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.security.KeyPair;
 import java.security.SecureRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BooleanSupplier;
 
 import org.bukkit.entity.Player;
 
@@ -77,6 +89,9 @@ public class ProtocolLibListener extends PacketAdapter {
             return;
         }
 
+        // the client waits for our response from now on
+        LoginDeadline deadline = plugin.getCore().startDeadline();
+
         Player sender = packetEvent.getPlayer();
         PacketType packetType = packetEvent.getPacketType();
         if (packetType == START) {
@@ -85,21 +100,29 @@ public class ProtocolLibListener extends PacketAdapter {
                 return;
             }
 
-            onLogin(packetEvent, sender);
+            onLogin(packetEvent, sender, deadline);
         } else {
-            onEncryptionBegin(packetEvent, sender);
+            onEncryptionBegin(packetEvent, sender, deadline);
         }
     }
 
-    private void onEncryptionBegin(PacketEvent packetEvent, Player sender) {
+    private void onEncryptionBegin(PacketEvent packetEvent, Player sender, LoginDeadline deadline) {
         byte[] sharedSecret = packetEvent.getPacket().getByteArrays().read(0);
+        trackConnection(sender, deadline);
 
         packetEvent.getAsyncMarker().incrementProcessingDelay();
-        Runnable verifyTask = new VerifyResponseTask(plugin, packetEvent, sender, sharedSecret, keyPair);
-        plugin.getScheduler().runAsync(verifyTask);
+        Runnable verifyTask = new VerifyResponseTask(plugin, packetEvent, sender, sharedSecret, keyPair, deadline);
+        try {
+            // decryption only needs the CPU and the session request is non-blocking
+            Executor executor = plugin.getScheduler().getExecutor(WorkKind.PROCESSING);
+            plugin.getCore().getPipeline().get(Stage.VERIFY).run(verifyTask, executor);
+        } catch (RejectedExecutionException rejectedEx) {
+            rejectBusy(packetEvent, sender);
+            ProtocolLibrary.getProtocolManager().getAsynchronousManager().signalPacketTransmission(packetEvent);
+        }
     }
 
-    private void onLogin(PacketEvent packetEvent, Player player) {
+    private void onLogin(PacketEvent packetEvent, Player player, LoginDeadline deadline) {
         //this includes ip:port. Should be unique for an incoming login request with a timeout of 2 minutes
         String sessionKey = player.getAddress().toString();
 
@@ -112,8 +135,80 @@ public class ProtocolLibListener extends PacketAdapter {
         String username = packet.getGameProfiles().read(0).getName();
         plugin.getLog().trace("GameProfile {} with {} connecting", sessionKey, username);
 
+        // fail fast instead of queueing more logins than we could handle before the client times out
+        LoginAdmission admission = plugin.getCore().getAdmission();
+        if (!admission.tryAdmit()) {
+            rejectBusy(packetEvent, player);
+            return;
+        }
+
+        trackConnection(player, deadline);
         packetEvent.getAsyncMarker().incrementProcessingDelay();
-        Runnable nameCheckTask = new NameCheckTask(plugin, packetEvent, random, player, username, keyPair.getPublic());
-        plugin.getScheduler().runAsync(nameCheckTask);
+        NameCheckTask nameCheckTask = new NameCheckTask(plugin, packetEvent, random, player, username,
+                keyPair.getPublic(), deadline);
+        try {
+            // stored profiles don't need a Mojang request, so don't let them wait behind a flood of unknown names
+            Executor executor;
+            if (plugin.getCore().isKnownName(username)) {
+                executor = plugin.getScheduler().getPriorityExecutor();
+            } else {
+                executor = plugin.getScheduler().getExecutor(WorkKind.BLOCKING);
+            }
+
+            CompletableFuture<Void> future = nameCheckTask.check(executor);
+            plugin.getInFlightLogins().track(plugin.getSessionId(player.getAddress()), future);
+            future.whenComplete((result, error) -> admission.release());
+        } catch (RejectedExecutionException rejectedEx) {
+            admission.release();
+            rejectBusy(packetEvent, player);
+            ProtocolLibrary.getProtocolManager().getAsynchronousManager().signalPacketTransmission(packetEvent);
+        }
+    }
+
+    private void trackConnection(Player player, LoginDeadline deadline) {
+        String sessionId = plugin.getSessionId(player.getAddress());
+        plugin.getInFlightLogins().start(sessionId, deadline, getConnectionState(player));
+    }
+
+    /**
+     * There is no close event for connections in the login phase, so the state of the Netty channel is checked.
+     *
+     * @param player temporary player of ProtocolLib
+     * @return true while the connection is open - always true if the channel cannot be found
+     */
+    private BooleanSupplier getConnectionState(Player player) {
+        try {
+            Object injectorContainer = TemporaryPlayerFactory.getInjectorFromPlayer(player);
+
+            //ChannelInjector
+            Class<?> injectorClass = Class.forName("com.comphenix.protocol.injector.netty.Injector");
+            Object rawInjector = FuzzyReflection.getFieldValue(injectorContainer, injectorClass, true);
+
+            // Netty is provided by the server
+            ClassLoader classLoader = rawInjector.getClass().getClassLoader();
+            Class<?> channelClass = Class.forName("io.netty.channel.Channel", false, classLoader);
+            Object channel = FuzzyReflection.getFieldValue(rawInjector, channelClass, true);
+            Method isOpen = channelClass.getMethod("isOpen");
+            return () -> {
+                try {
+                    return (boolean) isOpen.invoke(channel);
+                } catch (ReflectiveOperationException reflectiveEx) {
+                    return true;
+                }
+            };
+        } catch (Exception ex) {
+            plugin.getLog().debug("Cannot find the channel of {}", player, ex);
+            return () -> true;
+        }
+    }
+
+    private void rejectBusy(PacketEvent packetEvent, Player player) {
+        packetEvent.setCancelled(true);
+        try {
+            new ProtocolLibLoginSource(packetEvent, player, random, keyPair.getPublic())
+                    .kick(plugin.getCore().getMessage("server-busy"));
+        } catch (InvocationTargetException ex) {
+            plugin.getLog().error("Error sending kick packet for: {}", player, ex);
+        }
     }
 }
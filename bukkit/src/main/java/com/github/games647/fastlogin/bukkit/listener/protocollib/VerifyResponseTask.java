@@ -36,18 +36,20 @@ import com.comphenix.protocol.wrappers.WrappedChatComponent;
 import com.comphenix.protocol.wrappers.WrappedGameProfile;
 import com.github.games647.craftapi.model.auth.Verification;
 import com.github.games647.craftapi.model.skin.SkinProperty;
-import com.github.games647.craftapi.resolver.MojangResolver;
 import com.github.games647.fastlogin.bukkit.BukkitLoginSession;
 import com.github.games647.fastlogin.bukkit.FastLoginBukkit;
+import com.github.games647.fastlogin.core.AsyncScheduler.WorkKind;
+import com.github.games647.fastlogin.core.mojang.CircuitOpenException;
+import com.github.games647.fastlogin.core.shared.LoginDeadline;
+import com.github.games647.fastlogin.core.shared.LoginPipeline.Stage;
+import com.github.games647.fastlogin.core.shared.LoginStage;
 import org.bukkit.entity.Player;
 
 import javax.crypto.Cipher;
 import javax.crypto.SecretKey;
-import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.InetAddress;
-import java.net.InetSocketAddress;
 import java.security.GeneralSecurityException;
 import java.security.Key;
 import java.security.KeyPair;
@@ -55,6 +57,11 @@ import java.security.PrivateKey;
 import java.util.Arrays;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 import static com.comphenix.protocol.PacketType.Login.Client.START;
 import static com.comphenix.protocol.PacketType.Login.Server.DISCONNECT;
@@ -68,40 +75,63 @@ public class VerifyResponseTask implements Runnable {
     private final Player player;
 
     private final byte[] sharedSecret;
+    private final LoginDeadline deadline;
 
     private static Method encryptMethod;
     private static Method cipherMethod;
 
     public VerifyResponseTask(FastLoginBukkit plugin, PacketEvent packetEvent, Player player,
-                              byte[] sharedSecret, KeyPair keyPair) {
+                              byte[] sharedSecret, KeyPair keyPair, LoginDeadline deadline) {
         this.plugin = plugin;
         this.packetEvent = packetEvent;
         this.player = player;
         this.sharedSecret = Arrays.copyOf(sharedSecret, sharedSecret.length);
         this.serverKey = keyPair;
+        this.deadline = deadline;
     }
 
     @Override
     public void run() {
+        CompletableFuture<Void> verification = null;
         try {
             BukkitLoginSession session = plugin.getSession(player.getAddress());
             if (session == null) {
                 disconnect("invalid-request", true
                         , "GameProfile {0} tried to send encryption response at invalid state", player.getAddress());
+            } else if (deadline.isCancelled()) {
+                plugin.getLog().debug("Abandoning verification of {} - the connection closed",
+                        session.getRequestUsername());
+            } else if (deadline.isExpired()) {
+                // the client most likely gave up waiting - skip the decryption and session request
+                plugin.getCore().getAdmission().markExpired();
+                plugin.getLog().debug("Abandoning verification of {} after {} ms", session.getRequestUsername(),
+                        deadline.getElapsed());
             } else {
-                verifyResponse(session);
+                verification = verifyResponse(session);
             }
         } finally {
-            //this is a fake packet; it shouldn't be send to the server
-            synchronized (packetEvent.getAsyncMarker().getProcessingLock()) {
-                packetEvent.setCancelled(true);
+            if (verification == null) {
+                finishPacket();
+            } else {
+                // the session server request is still pending
+                verification.whenComplete((result, error) -> finishPacket());
             }
+        }
+    }
 
-            ProtocolLibrary.getProtocolManager().getAsynchronousManager().signalPacketTransmission(packetEvent);
+    private void finishPacket() {
+        //this is a fake packet; it shouldn't be send to the server
+        synchronized (packetEvent.getAsyncMarker().getProcessingLock()) {
+            packetEvent.setCancelled(true);
         }
+
+        ProtocolLibrary.getProtocolManager().getAsynchronousManager().signalPacketTransmission(packetEvent);
     }
 
-    private void verifyResponse(BukkitLoginSession session) {
+    /**
+     * @return pending session server verification or null if the verification already failed
+     */
+    private CompletableFuture<Void> verifyResponse(BukkitLoginSession session) {
         PrivateKey privateKey = serverKey.getPrivate();
 
         SecretKey loginKey;
@@ -109,54 +139,83 @@ public class VerifyResponseTask implements Runnable {
             loginKey = EncryptionUtil.decryptSharedKey(privateKey, sharedSecret);
         } catch (GeneralSecurityException securityEx) {
             disconnect("error-kick", false, "Cannot decrypt received contents", securityEx);
-            return;
+            return null;
         }
 
         try {
             if (!checkVerifyToken(session) || !enableEncryption(loginKey)) {
-                return;
+                return null;
             }
         } catch (Exception ex) {
             disconnect("error-kick", false, "Cannot decrypt received contents", ex);
-            return;
+            return null;
         }
 
         String serverId = EncryptionUtil.getServerIdHashString("", loginKey, serverKey.getPublic());
 
         String requestedUsername = session.getRequestUsername();
-        InetSocketAddress socketAddress = player.getAddress();
+        InetAddress address = player.getAddress().getAddress();
+
+        // continue on our pool instead of the I/O thread of the http client
+        Executor executor = plugin.getScheduler().getExecutor(WorkKind.PROCESSING);
+        CompletableFuture<Optional<Verification>> request;
         try {
-            MojangResolver resolver = plugin.getCore().getResolver();
-            InetAddress address = socketAddress.getAddress();
-            Optional<Verification> response = resolver.hasJoined(requestedUsername, serverId, address);
-            if (response.isPresent()) {
-                Verification verification = response.get();
-                plugin.getLog().info("Profile {} has a verified premium account: {}", requestedUsername, verification);
-                String realUsername = verification.getName();
-                if (realUsername == null) {
-                    disconnect("invalid-session", true, "Username field null for {}", requestedUsername);
-                    return;
-                }
-
-                SkinProperty[] properties = verification.getProperties();
-                if (properties.length > 0) {
-                    session.setSkinProperty(properties[0]);
-                }
-
-                session.setVerifiedUsername(realUsername);
-                session.setUuid(verification.getId());
-                session.setVerified(true);
-
-                setPremiumUUID(session.getUuid());
-                receiveFakeStartPacket(realUsername);
-            } else {
-                //user tried to fake a authentication
-                disconnect("invalid-session", true
-                        , "GameProfile {0} ({1}) tried to log in with an invalid session ServerId: {2}"
-                        , session.getRequestUsername(), socketAddress, serverId);
+            // a flood of lookups for unknown names doesn't delay players that already received the encryption request
+            LoginStage sessionStage = plugin.getCore().getPipeline().get(Stage.SESSION);
+            request = sessionStage.compose(() -> plugin.getCore().getApiConnector()
+                    .hasJoined(requestedUsername, serverId, address), executor);
+        } catch (RejectedExecutionException rejectedEx) {
+            disconnect("server-busy", false, "Too many pending session requests - kicking {}", requestedUsername);
+            return null;
+        }
+
+        // drop the request if the player disconnects while it's still queued
+        plugin.getInFlightLogins().track(plugin.getSessionId(player.getAddress()), request);
+        return request.thenAcceptAsync(response -> onVerification(session, serverId, response), executor)
+                .exceptionally(error -> {
+                    Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                    if (cause instanceof CancellationException) {
+                        plugin.getLog().debug("Session request of {} cancelled - the connection closed",
+                                requestedUsername);
+                    } else if (cause instanceof CircuitOpenException) {
+                        disconnect("mojang-unavailable", false, "Session server unavailable for {}",
+                                requestedUsername);
+                    } else {
+                        disconnect("error-kick", false, "Failed to connect to session server", cause);
+                    }
+
+                    return null;
+                });
+    }
+
+    private void onVerification(BukkitLoginSession session, String serverId, Optional<Verification> response) {
+        String requestedUsername = session.getRequestUsername();
+        if (response.isPresent()) {
+            Verification verification = response.get();
+            plugin.getLog().info("Profile {} has a verified premium account: {}", requestedUsername, verification);
+            String realUsername = verification.getName();
+            if (realUsername == null) {
+                disconnect("invalid-session", true, "Username field null for {}", requestedUsername);
+                return;
             }
-        } catch (IOException ioEx) {
-            disconnect("error-kick", false, "Failed to connect to session server", ioEx);
+
+            SkinProperty[] properties = verification.getProperties();
+            if (properties != null && properties.length > 0) {
+                session.setSkinProperty(properties[0]);
+                plugin.getCore().getTexturesCache().put(verification.getId(), properties[0]);
+            }
+
+            session.setVerifiedUsername(realUsername);
+            session.setUuid(verification.getId());
+            session.setVerified(true);
+
+            setPremiumUUID(session.getUuid());
+            receiveFakeStartPacket(realUsername);
+        } else {
+            //user tried to fake a authentication
+            disconnect("invalid-session", true
+                    , "GameProfile {0} ({1}) tried to log in with an invalid session ServerId: {2}"
+                    , session.getRequestUsername(), player.getAddress(), serverId);
         }
     }
 
@@ -29,13 +29,18 @@ import com.github.games647.craftapi.UUIDAdapter;
 import com.github.games647.fastlogin.bukkit.BukkitLoginSession;
 import com.github.games647.fastlogin.bukkit.FastLoginBukkit;
 import com.github.games647.fastlogin.bukkit.event.BukkitFastLoginPreLoginEvent;
+import com.github.games647.fastlogin.core.LoginAdmission;
 import com.github.games647.fastlogin.core.RateLimiter;
 import com.github.games647.fastlogin.core.StoredProfile;
 import com.github.games647.fastlogin.core.shared.JoinManagement;
+import com.github.games647.fastlogin.core.shared.LoginDeadline;
+import com.github.games647.fastlogin.core.shared.LoginSession;
 import com.github.games647.fastlogin.core.shared.event.FastLoginPreLoginEvent;
 
 import java.net.InetSocketAddress;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
@@ -75,12 +80,29 @@ public class ProtocolSupportListener extends JoinManagement<Player, CommandSende
         //remove old data every time on a new login in order to keep the session only for one person
         plugin.removeSession(address);
 
-        super.onLogin(username, new ProtocolLoginSource(loginStartEvent));
+        LoginAdmission admission = plugin.getCore().getAdmission();
+        if (!admission.tryAdmit()) {
+            loginStartEvent.denyLogin(plugin.getCore().getMessage("server-busy"));
+            return;
+        }
+
+        // the close event cancels it, so there is no need to check the connection state
+        LoginDeadline deadline = plugin.getCore().startDeadline();
+        String sessionId = plugin.getSessionId(address);
+        plugin.getInFlightLogins().start(sessionId, deadline, () -> true);
+        try {
+            super.onLogin(username, new ProtocolLoginSource(loginStartEvent), deadline);
+        } catch (RejectedExecutionException rejectedEx) {
+            loginStartEvent.denyLogin(plugin.getCore().getMessage("server-busy"));
+        } finally {
+            admission.release();
+        }
     }
 
     @EventHandler
     public void onConnectionClosed(ConnectionCloseEvent closeEvent) {
         InetSocketAddress address = closeEvent.getConnection().getAddress();
+        plugin.getInFlightLogins().cancel(plugin.getSessionId(address));
         plugin.removeSession(address);
     }
 
@@ -100,6 +122,13 @@ public class ProtocolSupportListener extends JoinManagement<Player, CommandSende
         }
     }
 
+    @Override
+    protected <T> CompletableFuture<T> track(ProtocolLoginSource source, CompletableFuture<T> future) {
+        // the close event drops the queued database and Mojang steps
+        plugin.getInFlightLogins().track(plugin.getSessionId(source.getAddress()), future);
+        return future;
+    }
+
     @Override
     public FastLoginPreLoginEvent callFastLoginPreLoginEvent(String username, ProtocolLoginSource source, StoredProfile profile) {
         BukkitFastLoginPreLoginEvent event = new BukkitFastLoginPreLoginEvent(username, source, profile);
@@ -120,8 +149,9 @@ public class ProtocolSupportListener extends JoinManagement<Player, CommandSende
     }
 
     @Override
-    public void startCrackedSession(ProtocolLoginSource source, StoredProfile profile, String username) {
+    public LoginSession startCrackedSession(ProtocolLoginSource source, StoredProfile profile, String username) {
         BukkitLoginSession loginSession = new BukkitLoginSession(username, profile);
         plugin.putSession(source.getAddress(), loginSession);
+        return loginSession;
     }
 }
@@ -38,6 +38,7 @@ import com.github.games647.fastlogin.core.message.ChannelMessage;
 import com.github.games647.fastlogin.core.message.NamespaceKey;
 import com.github.games647.fastlogin.core.message.SuccessMessage;
 import com.github.games647.fastlogin.core.shared.FastLoginCore;
+import com.github.games647.fastlogin.core.shared.InFlightLogins;
 import com.github.games647.fastlogin.core.shared.PlatformPlugin;
 import com.google.common.collect.MapMaker;
 import com.google.common.io.ByteArrayDataOutput;
@@ -72,12 +73,14 @@ public class FastLoginBungee extends Plugin implements PlatformPlugin<CommandSen
 
     private FastLoginCore<ProxiedPlayer, CommandSender, FastLoginBungee> core;
     private AsyncScheduler scheduler;
+    private InFlightLogins<PendingConnection> inFlightLogins;
     private Logger logger;
 
     @Override
     public void onEnable() {
         logger = CommonUtil.createLoggerFromJDK(getLogger());
         scheduler = new AsyncScheduler(logger, getThreadFactory());
+        inFlightLogins = new InFlightLogins<>(scheduler);
 
         core = new FastLoginCore<>(this);
         core.load();
@@ -115,6 +118,13 @@ public class FastLoginBungee extends Plugin implements PlatformPlugin<CommandSen
         return session;
     }
 
+    /**
+     * @return pending login work of connections
+     */
+    public InFlightLogins<PendingConnection> getInFlightLogins() {
+        return inFlightLogins;
+    }
+
     private void registerHook() {
         try {
             List<Class<? extends AuthPlugin<ProxiedPlayer>>> hooks = Arrays.asList(
@@ -26,12 +26,18 @@
 package com.github.games647.fastlogin.bungee.listener;
 
 import com.github.games647.craftapi.UUIDAdapter;
+import com.github.games647.craftapi.model.skin.SkinProperty;
+import com.github.games647.craftapi.model.skin.Textures;
 import com.github.games647.fastlogin.bungee.BungeeLoginSession;
 import com.github.games647.fastlogin.bungee.FastLoginBungee;
 import com.github.games647.fastlogin.bungee.task.AsyncPremiumCheck;
 import com.github.games647.fastlogin.bungee.task.ForceLoginTask;
+import com.github.games647.fastlogin.core.AsyncScheduler.WorkKind;
+import com.github.games647.fastlogin.core.LoginAdmission;
 import com.github.games647.fastlogin.core.RateLimiter;
 import com.github.games647.fastlogin.core.StoredProfile;
+import com.github.games647.fastlogin.core.shared.LoginDeadline;
+import com.github.games647.fastlogin.core.shared.LoginPipeline.Stage;
 import com.github.games647.fastlogin.core.shared.LoginSession;
 import com.google.common.base.Throwables;
 
@@ -40,7 +46,11 @@ import java.lang.invoke.MethodHandles;
 import java.lang.invoke.MethodHandles.Lookup;
 import java.lang.reflect.Field;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
+import net.md_5.bungee.api.chat.TextComponent;
 import net.md_5.bungee.api.connection.PendingConnection;
 import net.md_5.bungee.api.connection.ProxiedPlayer;
 import net.md_5.bungee.api.connection.Server;
@@ -113,6 +123,9 @@ public class ConnectListener implements Listener {
             return;
         }
 
+        // the client waits for our response from now on
+        LoginDeadline deadline = plugin.getCore().startDeadline();
+
         if (!rateLimiter.tryAcquire()) {
             //plugin.getLog().warn("Join limit hit - Ignoring player {}", connection);
             plugin.getLog().warn("Join limit hit - Kicking player {}", connection);
@@ -124,9 +137,41 @@ public class ConnectListener implements Listener {
         String username = connection.getName();
         plugin.getLog().info("Incoming login request for {} from {}", username, connection.getSocketAddress());
 
+        // fail fast instead of queueing more logins than we could handle before the client times out
+        LoginAdmission admission = plugin.getCore().getAdmission();
+        if (!admission.tryAdmit()) {
+            rejectBusy(preLoginEvent);
+            return;
+        }
+
+        // BungeeCord has no close event for pending connections
+        plugin.getInFlightLogins().start(connection, deadline, connection::isConnected);
+
         preLoginEvent.registerIntent(plugin);
-        Runnable asyncPremiumCheck = new AsyncPremiumCheck(plugin, preLoginEvent, connection, username);
-        plugin.getScheduler().runAsync(asyncPremiumCheck);
+        AsyncPremiumCheck asyncPremiumCheck = new AsyncPremiumCheck(plugin, preLoginEvent, connection, username,
+                deadline);
+        try {
+            // stored profiles don't need a Mojang request, so don't let them wait behind a flood of unknown names
+            Executor executor;
+            if (plugin.getCore().isKnownName(username)) {
+                executor = plugin.getScheduler().getPriorityExecutor();
+            } else {
+                executor = plugin.getScheduler().getExecutor(WorkKind.BLOCKING);
+            }
+
+            CompletableFuture<Void> future = asyncPremiumCheck.check(executor);
+            plugin.getInFlightLogins().track(connection, future);
+            future.whenComplete((result, error) -> admission.release());
+        } catch (RejectedExecutionException rejectedEx) {
+            admission.release();
+            rejectBusy(preLoginEvent);
+            preLoginEvent.completeIntent(plugin);
+        }
+    }
+
+    private void rejectBusy(PreLoginEvent preLoginEvent) {
+        preLoginEvent.setCancelled(true);
+        preLoginEvent.setCancelReason(TextComponent.fromLegacyText(plugin.getCore().getMessage("server-busy")));
     }
 
     @EventHandler(priority = EventPriority.LOWEST)
@@ -149,6 +194,10 @@ public class ConnectListener implements Listener {
             StoredProfile playerProfile = session.getProfile();
             playerProfile.setId(verifiedUUID);
 
+            if (plugin.getCore().getConfig().get("forwardSkin", true)) {
+                cacheTextures(connection, verifiedUUID);
+            }
+
             // bungeecord will do this automatically so override it on disabled option
             if (uniqueIdSetter != null) {
                 InitialHandler initialHandler = (InitialHandler) connection;
@@ -166,6 +215,21 @@ public class ConnectListener implements Listener {
         }
     }
 
+    private void cacheTextures(PendingConnection connection, UUID premiumId) {
+        LoginResult loginProfile = ((InitialHandler) connection).getLoginProfile();
+        if (loginProfile == null || loginProfile.getProperties() == null) {
+            return;
+        }
+
+        for (Property property : loginProfile.getProperties()) {
+            if (Textures.KEY.equals(property.getName())) {
+                SkinProperty skin = new SkinProperty(property.getValue(), property.getSignature());
+                plugin.getCore().getTexturesCache().put(premiumId, skin);
+                return;
+            }
+        }
+    }
+
     private void setOfflineId(InitialHandler connection, String username) {
         try {
             final UUID oldPremiumId = connection.getUniqueId();
@@ -200,12 +264,18 @@ public class ConnectListener implements Listener {
         // In this case it means that the force command (plugin message) is already received and processed while
         // player is still in the login phase and reported to be offline.
         Runnable loginTask = new ForceLoginTask(plugin.getCore(), player, server, session);
-        plugin.getScheduler().runAsync(loginTask);
+        Executor executor = plugin.getScheduler().getExecutor(WorkKind.BLOCKING);
+        try {
+            plugin.getCore().getPipeline().get(Stage.FORCE_LOGIN).run(loginTask, executor);
+        } catch (RejectedExecutionException rejectedEx) {
+            plugin.getLog().warn("Too many pending force logins - skipping the auto login of {}", player);
+        }
     }
 
     @EventHandler
     public void onDisconnect(PlayerDisconnectEvent disconnectEvent) {
         ProxiedPlayer player = disconnectEvent.getPlayer();
+        plugin.getInFlightLogins().cancel(player.getPendingConnection());
         plugin.getSession().remove(player.getPendingConnection());
         plugin.getCore().getPendingConfirms().remove(player.getUniqueId());
     }
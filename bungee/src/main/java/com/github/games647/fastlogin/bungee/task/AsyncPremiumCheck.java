@@ -31,41 +31,55 @@ import com.github.games647.fastlogin.bungee.FastLoginBungee;
 import com.github.games647.fastlogin.bungee.event.BungeeFastLoginPreLoginEvent;
 import com.github.games647.fastlogin.core.StoredProfile;
 import com.github.games647.fastlogin.core.shared.JoinManagement;
+import com.github.games647.fastlogin.core.shared.LoginDeadline;
+import com.github.games647.fastlogin.core.shared.LoginSession;
 import com.github.games647.fastlogin.core.shared.event.FastLoginPreLoginEvent;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
 import net.md_5.bungee.api.CommandSender;
 import net.md_5.bungee.api.connection.PendingConnection;
 import net.md_5.bungee.api.connection.ProxiedPlayer;
 import net.md_5.bungee.api.event.PreLoginEvent;
 
-public class AsyncPremiumCheck extends JoinManagement<ProxiedPlayer, CommandSender, BungeeLoginSource>
-        implements Runnable {
+public class AsyncPremiumCheck extends JoinManagement<ProxiedPlayer, CommandSender, BungeeLoginSource> {
 
     private final FastLoginBungee plugin;
     private final PreLoginEvent preLoginEvent;
 
     private final String username;
     private final PendingConnection connection;
+    private final LoginDeadline deadline;
 
     public AsyncPremiumCheck(FastLoginBungee plugin, PreLoginEvent preLoginEvent, PendingConnection connection,
-                             String username) {
+                             String username, LoginDeadline deadline) {
         super(plugin.getCore(), plugin.getCore().getAuthPluginHook());
 
         this.plugin = plugin;
         this.preLoginEvent = preLoginEvent;
         this.connection = connection;
         this.username = username;
+        this.deadline = deadline;
     }
 
-    @Override
-    public void run() {
+    /**
+     * @param executor runs the blocking database and auth plugin calls
+     * @return completes after the intent of the event is completed
+     */
+    public CompletableFuture<Void> check(Executor executor) {
         plugin.getSession().remove(connection);
 
-        try {
-            super.onLogin(username, new BungeeLoginSource(connection, preLoginEvent));
-        } finally {
-            preLoginEvent.completeIntent(plugin);
-        }
+        BungeeLoginSource source = new BungeeLoginSource(connection, preLoginEvent);
+        return super.onLoginAsync(username, source, deadline, executor)
+                .whenComplete((result, error) -> preLoginEvent.completeIntent(plugin));
+    }
+
+    @Override
+    protected <T> CompletableFuture<T> track(BungeeLoginSource source, CompletableFuture<T> future) {
+        // drop the queued database and Mojang steps if the player disconnects
+        plugin.getInFlightLogins().track(connection, future);
+        return future;
     }
 
     @Override
@@ -86,7 +100,9 @@ public class AsyncPremiumCheck extends JoinManagement<ProxiedPlayer, CommandSend
     }
 
     @Override
-    public void startCrackedSession(BungeeLoginSource source, StoredProfile profile, String username) {
-        plugin.getSession().put(source.getConnection(), new BungeeLoginSession(username, false, profile));
+    public LoginSession startCrackedSession(BungeeLoginSource source, StoredProfile profile, String username) {
+        BungeeLoginSession loginSession = new BungeeLoginSession(username, false, profile);
+        plugin.getSession().put(source.getConnection(), loginSession);
+        return loginSession;
     }
 }
@@ -25,11 +25,14 @@
  */
 package com.github.games647.fastlogin.core;
 
+import com.github.games647.fastlogin.core.HashedWheelTimer.Timeout;
 import com.google.common.util.concurrent.MoreExecutors;
 
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -40,21 +43,34 @@ import org.slf4j.Logger;
  * This limits the number of threads that are used at maximum. Thread creation can be very heavy for the CPU and
  * context switching between threads too. However we need many threads for blocking HTTP and database calls.
  * Nevertheless this number can be further limited, because the number of actually working database threads
- * is limited by the size of our database pool. The goal is to separate concerns into processing and blocking only
- * threads.
+ * is limited by the size of our database pool.
+ *
+ * Therefore concerns are separated into processing and blocking threads. Processing threads are limited to the number
+ * of cores, while blocking threads only wait for I/O. This way CPU work like the decryption of the login packets never
+ * waits behind slow database or HTTP calls.
  */
 public class AsyncScheduler {
 
     private static final int MAX_CAPACITY = 1024;
 
-    //todo: single thread for delaying and scheduling tasks
     private final Logger logger;
 
-    // 30 threads are still too many - the optimal solution is to separate into processing and blocking threads
-    // where processing threads could only be max number of cores while blocking threads could be minimized using
-    // non-blocking I/O and a single event executor
+    // single thread for delaying and scheduling tasks and expirations - the tasks themselves run on the thread pools
+    private final HashedWheelTimer timer;
+
+    // max number of cores
     private final ExecutorService processingPool;
 
+    // 30 threads are still too many - blocking threads could be further minimized using non-blocking I/O like the
+    // session server requests
+    private final ExecutorService blockingPool;
+
+    // known players skip the queue of unknown names - for example during bot attacks with random names
+    private final LaneExecutor blockingLanes;
+
+    // virtual threads are cheap, so only the number of concurrent tasks is limited instead of the number of threads
+    private ExecutorService virtualThreads;
+
     /*
     private final ExecutorService databaseExecutor = new ThreadPoolExecutor(1, 10,
             0L, TimeUnit.MILLISECONDS,
@@ -63,9 +79,17 @@ public class AsyncScheduler {
 
     public AsyncScheduler(Logger logger, ThreadFactory threadFactory) {
         this.logger = logger;
-        processingPool = new ThreadPoolExecutor(6, 32,
+        int cores = Runtime.getRuntime().availableProcessors();
+        processingPool = new ThreadPoolExecutor(cores, cores,
                 60L, TimeUnit.SECONDS,
                 new LinkedBlockingQueue<>(MAX_CAPACITY), threadFactory);
+
+        blockingPool = new ThreadPoolExecutor(6, 32,
+                60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(MAX_CAPACITY), threadFactory);
+        blockingLanes = new LaneExecutor(blockingPool);
+
+        timer = new HashedWheelTimer(logger, threadFactory);
     }
 
     /*
@@ -80,15 +104,135 @@ public class AsyncScheduler {
     }
      */
 
+    /**
+     * Run blocking tasks on virtual threads instead of the blocking thread pool. This requires Java 21 or newer.
+     *
+     * @param maxConcurrency maximum number of blocking tasks running at the same time - others wait for a permit
+     * @return false if the runtime doesn't support virtual threads
+     */
+    public synchronized boolean enableVirtualThreads(int maxConcurrency) {
+        if (!VirtualThreads.isSupported()) {
+            return false;
+        }
+
+        if (virtualThreads == null) {
+            virtualThreads = VirtualThreads.newExecutor("FastLogin Virtual Thread #");
+        }
+
+        ExecutorService executor = virtualThreads;
+        Semaphore permits = new Semaphore(maxConcurrency);
+        blockingLanes.setDelegate(task -> executor.execute(() -> {
+            // waiting here only parks the virtual thread
+            permits.acquireUninterruptibly();
+            try {
+                task.run();
+            } finally {
+                permits.release();
+            }
+        }));
+
+        return true;
+    }
+
+    /**
+     * Run a task that could block like database or HTTP calls.
+     *
+     * @param task the task
+     * @return future of the task
+     */
     public CompletableFuture<Void> runAsync(Runnable task) {
-        return CompletableFuture.runAsync(task, processingPool).exceptionally(error -> {
+        return runAsync(task, WorkKind.BLOCKING);
+    }
+
+    /**
+     * @param task the task
+     * @param kind the kind of work the task does
+     * @return future of the task
+     */
+    public CompletableFuture<Void> runAsync(Runnable task, WorkKind kind) {
+        return CompletableFuture.runAsync(task, getExecutor(kind)).exceptionally(error -> {
             logger.warn("Error occurred on thread pool", error);
             return null;
         });
     }
 
+    /**
+     * Run the task repeatedly on the blocking thread pool.
+     *
+     * @param task the task
+     * @param delay delay between the start of one execution and the next one
+     * @param unit unit of the delay
+     * @return future to cancel it
+     */
+    public Timeout runAsyncRepeating(Runnable task, long delay, TimeUnit unit) {
+        return timer.scheduleAtFixedRate(() -> runAsync(task), delay, delay, unit);
+    }
+
+    /**
+     * Run the task once on the blocking thread pool after the delay.
+     *
+     * @param task the task
+     * @param delay the delay
+     * @param unit unit of the delay
+     * @return handle to cancel it
+     */
+    public Timeout runAsyncDelayed(Runnable task, long delay, TimeUnit unit) {
+        return timer.schedule(() -> runAsync(task), delay, unit);
+    }
+
+    /**
+     * @return shared timer for delayed tasks and expirations
+     */
+    public HashedWheelTimer getTimer() {
+        return timer;
+    }
+
+    /**
+     * @param kind the kind of work
+     * @return executor for the kind of work like callbacks of non-blocking requests
+     */
+    public Executor getExecutor(WorkKind kind) {
+        if (kind == WorkKind.PROCESSING) {
+            return processingPool;
+        }
+
+        return blockingLanes;
+    }
+
+    /**
+     * @return executor for blocking work that runs ahead of the tasks submitted by {@link #runAsync(Runnable)}. This
+     * is intended for cheap work like logins of already known players.
+     */
+    public Executor getPriorityExecutor() {
+        return blockingLanes::executePriority;
+    }
+
     public void shutdown() {
+        timer.stop();
         MoreExecutors.shutdownAndAwaitTermination(processingPool, 1, TimeUnit.MINUTES);
+        MoreExecutors.shutdownAndAwaitTermination(blockingPool, 1, TimeUnit.MINUTES);
+
+        ExecutorService virtualExecutor;
+        synchronized (this) {
+            virtualExecutor = virtualThreads;
+        }
+
+        if (virtualExecutor != null) {
+            MoreExecutors.shutdownAndAwaitTermination(virtualExecutor, 1, TimeUnit.MINUTES);
+        }
         //MoreExecutors.shutdownAndAwaitTermination(databaseExecutor, 1, TimeUnit.MINUTES);
     }
+
+    public enum WorkKind {
+
+        /**
+         * Work that only uses the CPU like encryption
+         */
+        PROCESSING,
+
+        /**
+         * Work that waits for I/O like database or HTTP calls
+         */
+        BLOCKING
+    }
 }
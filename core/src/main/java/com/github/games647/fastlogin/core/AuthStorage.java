@@ -36,9 +36,13 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.ThreadFactory;
+import java.util.function.Consumer;
 
 import static java.sql.Statement.RETURN_GENERATED_KEYS;
 
@@ -48,14 +52,20 @@ public class AuthStorage {
 
     private static final String LOAD_BY_NAME = "SELECT * FROM `" + PREMIUM_TABLE + "` WHERE `Name`=? LIMIT 1";
     private static final String LOAD_BY_UUID = "SELECT * FROM `" + PREMIUM_TABLE + "` WHERE `UUID`=? LIMIT 1";
+    private static final String LOAD_NAMES = "SELECT `Name` FROM `" + PREMIUM_TABLE + '`';
+    private static final String LOAD_PREMIUM_BY_LAST_LOGIN = "SELECT * FROM `" + PREMIUM_TABLE
+            + "` WHERE `Premium`=1 AND `UUID` IS NOT NULL ORDER BY `LastLogin`, `UserID` LIMIT ? OFFSET ?";
     private static final String INSERT_PROFILE = "INSERT INTO `" + PREMIUM_TABLE
             + "` (`UUID`, `Name`, `Premium`, `LastIp`) " + "VALUES (?, ?, ?, ?) ";
     // limit not necessary here, because it's unique
     private static final String UPDATE_PROFILE = "UPDATE `" + PREMIUM_TABLE
             + "` SET `UUID`=?, `Name`=?, `Premium`=?, `LastIp`=?, `LastLogin`=CURRENT_TIMESTAMP WHERE `UserID`=?";
+    // keep the last login, because the player didn't join
+    private static final String UPDATE_NAME = "UPDATE `" + PREMIUM_TABLE + "` SET `Name`=? WHERE `UserID`=?";
 
     private final FastLoginCore<?, ?, ?> core;
     private final HikariDataSource dataSource;
+    private final QuotaStorage quotaStorage;
 
     public AuthStorage(FastLoginCore<?, ?, ?> core, String host, int port, String databasePath,
                        HikariConfig config, boolean useSSL) {
@@ -130,6 +140,7 @@ public class AuthStorage {
 
         config.setJdbcUrl(jdbcUrl);
         this.dataSource = new HikariDataSource(config);
+        this.quotaStorage = new QuotaStorage(dataSource, core.getPlugin().getLog());
     }
 
     public void createTables() throws SQLException {
@@ -158,6 +169,13 @@ public class AuthStorage {
         }
     }
 
+    /**
+     * @return storage of the Mojang quota that is shared between the servers of a network
+     */
+    public QuotaStorage getQuotaStorage() {
+        return quotaStorage;
+    }
+
     public StoredProfile loadProfile(String name) {
         try (Connection con = dataSource.getConnection();
              PreparedStatement loadStmt = con.prepareStatement(LOAD_BY_NAME)
@@ -189,6 +207,60 @@ public class AuthStorage {
         return null;
     }
 
+    /**
+     * Load premium profiles ordered by their last login - oldest first.
+     *
+     * @param offset number of profiles to skip
+     * @param limit maximum number of profiles
+     * @return the profiles or an empty list if there are no more profiles or on database errors
+     */
+    public List<StoredProfile> loadPremiumByLastLogin(int offset, int limit) {
+        try (Connection con = dataSource.getConnection();
+             PreparedStatement loadStmt = con.prepareStatement(LOAD_PREMIUM_BY_LAST_LOGIN)) {
+            loadStmt.setInt(1, limit);
+            loadStmt.setInt(2, offset);
+
+            List<StoredProfile> profiles = new ArrayList<>(limit);
+            try (ResultSet resultSet = loadStmt.executeQuery()) {
+                Optional<StoredProfile> profile;
+                while ((profile = parseResult(resultSet)).isPresent()) {
+                    profiles.add(profile.get());
+                }
+            }
+
+            return profiles;
+        } catch (SQLException sqlEx) {
+            core.getPlugin().getLog().error("Failed to query premium profiles", sqlEx);
+        }
+
+        return Collections.emptyList();
+    }
+
+    /**
+     * Pass the name of every stored profile to the consumer.
+     *
+     * @param consumer receives the names
+     * @return false on database errors
+     */
+    public boolean loadNames(Consumer<String> consumer) {
+        try (Connection con = dataSource.getConnection();
+             Statement loadStmt = con.createStatement();
+             ResultSet resultSet = loadStmt.executeQuery(LOAD_NAMES)) {
+            while (resultSet.next()) {
+                String name = resultSet.getString(1);
+                if (name != null) {
+                    consumer.accept(name);
+                }
+            }
+
+            return true;
+        } catch (SQLException sqlEx) {
+            core.getPlugin().getLog().error("Failed to load stored names", sqlEx);
+        }
+
+        return false;
+    }
+
     private Optional<StoredProfile> parseResult(ResultSet resultSet) throws SQLException {
         if (resultSet.next()) {
             long userId = resultSet.getInt(1);
@@ -240,11 +312,43 @@ public class AuthStorage {
             } finally {
                 playerProfile.getSaveLock().unlock();
             }
+
+            markKnown(playerProfile.getName());
         } catch (SQLException ex) {
             core.getPlugin().getLog().error("Failed to save playerProfile {}", playerProfile, ex);
         }
     }
 
+    /**
+     * Update only the name of a saved profile without touching the last login.
+     *
+     * @param playerProfile saved profile with the new name
+     * @return false if the name is already used by another profile or on database errors
+     */
+    public boolean updateName(StoredProfile playerProfile) {
+        try (Connection con = dataSource.getConnection();
+             PreparedStatement updateStmt = con.prepareStatement(UPDATE_NAME)) {
+            updateStmt.setString(1, playerProfile.getName());
+            updateStmt.setLong(2, playerProfile.getRowId());
+            updateStmt.execute();
+
+            markKnown(playerProfile.getName());
+            return true;
+        } catch (SQLException sqlEx) {
+            // most likely a violation of the unique name constraint
+            core.getPlugin().getLog().warn("Failed to update name of {}", playerProfile, sqlEx);
+        }
+
+        return false;
+    }
+
+    private void markKnown(String name) {
+        KnownNames knownNames = core.getKnownNames();
+        if (knownNames != null && name != null) {
+            knownNames.add(name);
+        }
+    }
+
     public void close() {
         dataSource.close();
     }
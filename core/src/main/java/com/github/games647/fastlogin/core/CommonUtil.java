@@ -58,6 +58,25 @@ public class CommonUtil {
         }));
     }
 
+    /**
+     * Build a cache whose expirations are tasks of the shared timer instead of cleanups on access. Caches with a
+     * maximum size still need the access order, so those fall back to {@link #buildCache(int, int)}.
+     *
+     * @param timer shared timer
+     * @param expireAfterWrite minutes after an entry is removed
+     * @param maxSize maximum number of entries or a non-positive value for no limit
+     * @param <K> key type
+     * @param <V> value type
+     * @return thread-safe map
+     */
+    public static <K, V> ConcurrentMap<K, V> buildCache(HashedWheelTimer timer, int expireAfterWrite, int maxSize) {
+        if (maxSize > 0 || expireAfterWrite <= 0) {
+            return buildCache(expireAfterWrite, maxSize);
+        }
+
+        return new ExpiringMap<>(timer, expireAfterWrite, TimeUnit.MINUTES);
+    }
+
     public static String translateColorCodes(String rawMessage) {
         char[] chars = rawMessage.toCharArray();
         for (int i = 0; i < chars.length - 1; i++) {
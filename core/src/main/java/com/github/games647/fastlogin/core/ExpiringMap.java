@@ -0,0 +1,229 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2021 <Your name and contributors>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core;
+
+import com.github.games647.fastlogin.core.HashedWheelTimer.Timeout;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thread-safe map that removes entries after a fixed time since they were written. The expirations are tasks of the
+ * shared timer, so the map itself doesn't need any cleanup on access.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class ExpiringMap<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V> {
+
+    private final ConcurrentMap<K, Entry<V>> entries = new ConcurrentHashMap<>();
+
+    private final HashedWheelTimer timer;
+    private final long expireAfterWrite;
+    private final TimeUnit unit;
+
+    /**
+     * @param timer timer for the expirations
+     * @param expireAfterWrite time after an entry is removed
+     * @param unit unit of the time
+     */
+    public ExpiringMap(HashedWheelTimer timer, long expireAfterWrite, TimeUnit unit) {
+        this.timer = timer;
+        this.expireAfterWrite = expireAfterWrite;
+        this.unit = unit;
+    }
+
+    @Override
+    public V get(Object key) {
+        return unwrap(entries.get(key));
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return entries.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public V put(K key, V value) {
+        Entry<V> entry = new Entry<>(value);
+        Entry<V> previous = entries.put(key, entry);
+        scheduleExpire(key, entry);
+        return release(previous);
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        Entry<V> entry = new Entry<>(value);
+        Entry<V> previous = entries.putIfAbsent(key, entry);
+        if (previous == null) {
+            scheduleExpire(key, entry);
+        }
+
+        return unwrap(previous);
+    }
+
+    @Override
+    public V remove(Object key) {
+        return release(entries.remove(key));
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        Entry<V> entry = entries.get(key);
+        if (entry != null && Objects.equals(entry.value, value) && entries.remove(key, entry)) {
+            release(entry);
+            return true;
+        }
+
+        return false;
+    }
+
+    @Override
+    public V replace(K key, V value) {
+        Entry<V> entry = new Entry<>(value);
+        Entry<V> previous = entries.replace(key, entry);
+        if (previous != null) {
+            scheduleExpire(key, entry);
+        }
+
+        return release(previous);
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null || !Objects.equals(entry.value, oldValue)) {
+            return false;
+        }
+
+        Entry<V> replacement = new Entry<>(newValue);
+        if (!entries.replace(key, entry, replacement)) {
+            return false;
+        }
+
+        scheduleExpire(key, replacement);
+        release(entry);
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        for (K key : entries.keySet()) {
+            remove(key);
+        }
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return new AbstractSet<Map.Entry<K, V>>() {
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator() {
+                Iterator<Map.Entry<K, Entry<V>>> iterator = entries.entrySet().iterator();
+                return new Iterator<Map.Entry<K, V>>() {
+
+                    private Map.Entry<K, Entry<V>> last;
+
+                    @Override
+                    public boolean hasNext() {
+                        return iterator.hasNext();
+                    }
+
+                    @Override
+                    public Map.Entry<K, V> next() {
+                        Map.Entry<K, Entry<V>> next = iterator.next();
+                        last = next;
+                        return new SimpleImmutableEntry<>(next.getKey(), next.getValue().value);
+                    }
+
+                    @Override
+                    public void remove() {
+                        if (last == null) {
+                            throw new IllegalStateException();
+                        }
+
+                        // only if it wasn't replaced in the meanwhile
+                        if (entries.remove(last.getKey(), last.getValue())) {
+                            release(last.getValue());
+                        }
+
+                        last = null;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return entries.size();
+            }
+        };
+    }
+
+    private void scheduleExpire(K key, Entry<V> entry) {
+        // schedule after inserting, so an immediate expiration cannot run before the entry exists
+        entry.timeout = timer.schedule(() -> entries.remove(key, entry), expireAfterWrite, unit);
+    }
+
+    private V release(Entry<V> entry) {
+        if (entry == null) {
+            return null;
+        }
+
+        Timeout timeout = entry.timeout;
+        if (timeout != null) {
+            timeout.cancel();
+        }
+
+        return entry.value;
+    }
+
+    private static <V> V unwrap(Entry<V> entry) {
+        return entry == null ? null : entry.value;
+    }
+
+    private static class Entry<V> {
+
+        private final V value;
+
+        // assigned after the insert - a removal before that only leaves a no-op timeout
+        private volatile Timeout timeout;
+
+        Entry(V value) {
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,322 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2021 <Your name and contributors>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+
+/**
+ * Single thread for all delayed tasks and expirations of the plugin. Tasks are sorted into the buckets of a wheel
+ * by their deadline, so scheduling and cancelling is O(1) independent of the number of pending tasks. The thread only
+ * wakes up once per tick, which is therefore the precision of the deadlines.
+ *
+ * Tasks run on the timer thread and should only hand over the actual work to another executor.
+ */
+public class HashedWheelTimer {
+
+    private static final long DEFAULT_TICK = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final int DEFAULT_WHEEL_SIZE = 512;
+
+    // limit the work per tick if a lot of tasks are scheduled at once
+    private static final int MAX_TRANSFERS = 100_000;
+
+    private final Logger logger;
+    private final long tickDuration;
+    private final Bucket[] wheel;
+    private final int mask;
+
+    // new and cancelled tasks are only handed over to the timer thread, so the wheel itself needs no locking
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+
+    private final long startTime = System.nanoTime();
+    private final Thread worker;
+    private final AtomicBoolean started = new AtomicBoolean();
+    private volatile boolean running = true;
+
+    public HashedWheelTimer(Logger logger, ThreadFactory threadFactory) {
+        this(logger, threadFactory, DEFAULT_TICK, TimeUnit.NANOSECONDS, DEFAULT_WHEEL_SIZE);
+    }
+
+    /**
+     * @param logger logger for failing tasks
+     * @param threadFactory factory for the timer thread
+     * @param tickDuration precision of the deadlines
+     * @param unit unit of the tick duration
+     * @param wheelSize number of buckets - rounded up to the next power of two
+     */
+    public HashedWheelTimer(Logger logger, ThreadFactory threadFactory, long tickDuration, TimeUnit unit,
+                            int wheelSize) {
+        this.logger = logger;
+        this.tickDuration = Math.max(unit.toNanos(tickDuration), 1);
+
+        int size = Integer.highestOneBit(Math.max(wheelSize, 1) * 2 - 1);
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+
+        this.mask = size - 1;
+
+        // started on the first task like the thread of an executor
+        this.worker = threadFactory.newThread(this::run);
+    }
+
+    /**
+     * Run the task once after the delay.
+     *
+     * @param task short task running on the timer thread
+     * @param delay the delay
+     * @param unit unit of the delay
+     * @return handle to cancel it
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        return schedule(task, delay, 0, unit);
+    }
+
+    /**
+     * Run the task repeatedly. The next execution is planned from the deadline of the previous one, so the rate
+     * doesn't drift.
+     *
+     * @param task short task running on the timer thread
+     * @param initialDelay delay of the first execution
+     * @param period time between two executions
+     * @param unit unit of the delay and period
+     * @return handle to cancel it
+     */
+    public Timeout scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("Period has to be positive");
+        }
+
+        return schedule(task, initialDelay, unit.toNanos(period), unit);
+    }
+
+    private Timeout schedule(Runnable task, long delay, long period, TimeUnit unit) {
+        long deadline = System.nanoTime() - startTime + Math.max(unit.toNanos(delay), 0);
+        Timeout timeout = new Timeout(this, task, deadline, period);
+        if (!running) {
+            // drop it like a shutdown executor, but don't break callers during shutdown
+            timeout.cancel();
+            return timeout;
+        }
+
+        pending.add(timeout);
+        if (!started.get() && started.compareAndSet(false, true)) {
+            worker.start();
+        }
+
+        return timeout;
+    }
+
+    /**
+     * Stop the timer thread. Pending tasks won't run anymore.
+     */
+    public void stop() {
+        running = false;
+        worker.interrupt();
+    }
+
+    private void run() {
+        long tick = 0;
+        while (running) {
+            long sleepTime = tickDuration * (tick + 1) - (System.nanoTime() - startTime);
+            if (sleepTime > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepTime);
+                } catch (InterruptedException interruptedEx) {
+                    // stopped or spurious interrupt - check the running flag again
+                    continue;
+                }
+            }
+
+            removeCancelled();
+            transferPending(tick);
+            expire(wheel[(int) (tick & mask)], System.nanoTime() - startTime);
+            tick++;
+        }
+    }
+
+    private void removeCancelled() {
+        Timeout timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    private void transferPending(long tick) {
+        for (int i = 0; i < MAX_TRANSFERS; i++) {
+            Timeout timeout = pending.poll();
+            if (timeout == null) {
+                return;
+            }
+
+            if (timeout.isCancelled()) {
+                continue;
+            }
+
+            long targetTick = timeout.deadline / tickDuration;
+            timeout.rounds = (targetTick - tick) / wheel.length;
+
+            // tasks that are already overdue run in the current tick
+            long bucketTick = Math.max(targetTick, tick);
+            wheel[(int) (bucketTick & mask)].add(timeout);
+        }
+    }
+
+    private void expire(Bucket bucket, long now) {
+        Timeout timeout = bucket.head;
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            if (timeout.isCancelled()) {
+                bucket.remove(timeout);
+            } else if (timeout.rounds <= 0) {
+                bucket.remove(timeout);
+                if (timeout.deadline <= now) {
+                    timeout.expire();
+                } else {
+                    // the tick was early - try it again
+                    pending.add(timeout);
+                }
+            } else {
+                timeout.rounds--;
+            }
+
+            timeout = next;
+        }
+    }
+
+    public static final class Timeout {
+
+        private static final int INIT = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final HashedWheelTimer timer;
+        private final Runnable task;
+        private final long period;
+        private final AtomicInteger state = new AtomicInteger(INIT);
+
+        // only accessed by the timer thread after scheduling
+        private long deadline;
+        private long rounds;
+        private Bucket bucket;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(HashedWheelTimer timer, Runnable task, long deadline, long period) {
+            this.timer = timer;
+            this.task = task;
+            this.deadline = deadline;
+            this.period = period;
+        }
+
+        /**
+         * @return false if the task already ran or was cancelled before
+         */
+        public boolean cancel() {
+            if (!state.compareAndSet(INIT, CANCELLED)) {
+                return false;
+            }
+
+            timer.cancelled.add(this);
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+
+        private void expire() {
+            if (period == 0 && !state.compareAndSet(INIT, EXPIRED)) {
+                return;
+            }
+
+            try {
+                task.run();
+            } catch (Exception ex) {
+                timer.logger.warn("Error occurred on timer thread", ex);
+            }
+
+            if (period > 0 && !isCancelled()) {
+                deadline += period;
+                timer.pending.add(this);
+            }
+        }
+    }
+
+    // doubly linked list for O(1) removals
+    private static final class Bucket {
+
+        private Timeout head;
+        private Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void remove(Timeout timeout) {
+            if (timeout.bucket != this) {
+                return;
+            }
+
+            if (timeout.prev == null) {
+                head = timeout.next;
+            } else {
+                timeout.prev.next = timeout.next;
+            }
+
+            if (timeout.next == null) {
+                tail = timeout.prev;
+            } else {
+                timeout.next.prev = timeout.prev;
+            }
+
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2021 <Your name and contributors>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+
+import java.util.Locale;
+
+/**
+ * Memory efficient set of names that have a stored profile. Those logins can be decided by a single database query
+ * without asking Mojang. Lookups could be false positives but never false negatives for added names.
+ */
+public class KnownNames {
+
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    private final BloomFilter<CharSequence> filter;
+    private volatile boolean complete;
+
+    /**
+     * @param expectedNames expected number of stored profiles - more names increase the false positive rate
+     */
+    public KnownNames(int expectedNames) {
+        this.filter = BloomFilter.create(Funnels.stringFunnel(Charsets.UTF_8), expectedNames, FALSE_POSITIVE_RATE);
+    }
+
+    public void add(String name) {
+        String key = name.toLowerCase(Locale.ROOT);
+
+        // the filter of this Guava version isn't thread-safe
+        synchronized (filter) {
+            filter.put(key);
+        }
+    }
+
+    /**
+     * Mark that all stored names are added. Until then a miss doesn't mean that the name is unknown.
+     */
+    public void setComplete() {
+        this.complete = true;
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * @param name player name
+     * @return true if the name probably has a stored profile
+     */
+    public boolean mightBeKnown(String name) {
+        String key = name.toLowerCase(Locale.ROOT);
+        synchronized (filter) {
+            return filter.mightContain(key);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2021 <Your name and contributors>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Executor with a priority lane in front of another executor. Every submitted task hands one runner to the delegate.
+ * A runner takes the oldest task of the priority lane and only falls back to the normal lane if it's empty. This way
+ * a free thread always picks up priority tasks first, while the delegate still limits the number of threads and the
+ * queue capacity.
+ */
+public class LaneExecutor implements Executor {
+
+    private final Queue<Runnable> priorityLane = new ConcurrentLinkedQueue<>();
+    private final Queue<Runnable> normalLane = new ConcurrentLinkedQueue<>();
+
+    private volatile Executor delegate;
+
+    public LaneExecutor(Executor delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Run the task in the normal lane.
+     *
+     * @param task the task
+     */
+    @Override
+    public void execute(Runnable task) {
+        submit(normalLane, task);
+    }
+
+    /**
+     * Run the task ahead of all tasks waiting in the normal lane.
+     *
+     * @param task the task
+     */
+    public void executePriority(Runnable task) {
+        submit(priorityLane, task);
+    }
+
+    /**
+     * @param delegate executor that runs the tasks from now on
+     */
+    public void setDelegate(Executor delegate) {
+        this.delegate = delegate;
+    }
+
+    private void submit(Queue<Runnable> lane, Runnable task) {
+        lane.add(task);
+        try {
+            delegate.execute(this::runNext);
+        } catch (RejectedExecutionException rejectedEx) {
+            // if another runner already took it, the task runs anyway and the next runner picks the remaining one
+            if (lane.remove(task)) {
+                throw rejectedEx;
+            }
+        }
+    }
+
+    private void runNext() {
+        Runnable task = priorityLane.poll();
+        if (task == null) {
+            task = normalLane.poll();
+        }
+
+        if (task != null) {
+            task.run();
+        }
+    }
+}
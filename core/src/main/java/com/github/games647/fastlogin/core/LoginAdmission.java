@@ -0,0 +1,117 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2021 <Your name and contributors>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+
+/**
+ * Caps the number of logins that are processed at the same time. Connections above the limit are rejected right away
+ * instead of piling up in the executor queue while the client waits for a timeout.
+ */
+public class LoginAdmission {
+
+    private final int maxPending;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+
+    private final RejectionWarning rejectionWarning;
+
+    /**
+     * @param logger     logger for rejection summaries
+     * @param maxPending maximum of concurrently processed logins or a value below 1 to disable admission control
+     */
+    public LoginAdmission(Logger logger, int maxPending) {
+        this.rejectionWarning = new RejectionWarning(logger);
+        this.maxPending = maxPending;
+    }
+
+    /**
+     * Reserve a slot for a new login. Every successful call has to be followed by exactly one {@link #release()}.
+     *
+     * @return true if the login could be admitted - false if the pipeline is saturated
+     */
+    public boolean tryAdmit() {
+        if (maxPending <= 0) {
+            inFlight.incrementAndGet();
+            admitted.incrementAndGet();
+            return true;
+        }
+
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= maxPending) {
+                rejected.incrementAndGet();
+                warnRejected();
+                return false;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+
+        admitted.incrementAndGet();
+        return true;
+    }
+
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * Count a login that was abandoned, because the client most likely already gave up waiting.
+     */
+    public void markExpired() {
+        expired.incrementAndGet();
+    }
+
+    public int getMaxPending() {
+        return maxPending;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getAdmitted() {
+        return admitted.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    public long getExpired() {
+        return expired.get();
+    }
+
+    private void warnRejected() {
+        rejectionWarning.warn(rejected.get(), "Login pipeline saturated ({} in flight)", maxPending);
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2021 <Your name and contributors>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+
+/**
+ * Mojang quota that is shared between the servers of a network. The used requests are counted per egress in buckets
+ * of a fixed length, so the sum of the recent buckets gives a sliding window.
+ *
+ * Changes run in a transaction that first updates the lock row of the egress. That row lock serializes the servers
+ * between reading the sum and adding to it.
+ */
+public class QuotaStorage {
+
+    private static final String QUOTA_TABLE = "mojang_quota";
+
+    // bucket of the row that is only updated in order to lock the egress
+    private static final long LOCK_BUCKET = -1;
+
+    private static final String INSERT_LOCK = "INSERT INTO `" + QUOTA_TABLE
+            + "` (`Egress`, `Bucket`, `Used`) VALUES (?, " + LOCK_BUCKET + ", 0)";
+    // rows are locked by the update even if it doesn't change the value
+    private static final String LOCK = "UPDATE `" + QUOTA_TABLE
+            + "` SET `Used`=0 WHERE `Egress`=? AND `Bucket`=" + LOCK_BUCKET;
+    private static final String DELETE_EXPIRED = "DELETE FROM `" + QUOTA_TABLE
+            + "` WHERE `Egress`=? AND `Bucket`>=0 AND `Bucket`<?";
+    private static final String LOAD_USED = "SELECT COALESCE(SUM(`Used`), 0) FROM `" + QUOTA_TABLE
+            + "` WHERE `Egress`=? AND `Bucket`>=? AND `Bucket`<>" + LOCK_BUCKET;
+    private static final String ADD_USED = "UPDATE `" + QUOTA_TABLE
+            + "` SET `Used`=`Used`+? WHERE `Egress`=? AND `Bucket`=?";
+    private static final String INSERT_USED = "INSERT INTO `" + QUOTA_TABLE
+            + "` (`Egress`, `Bucket`, `Used`) VALUES (?, ?, ?)";
+    // never below zero if the bucket was exhausted in the meanwhile
+    private static final String GIVE_BACK = "UPDATE `" + QUOTA_TABLE
+            + "` SET `Used`=`Used`-? WHERE `Egress`=? AND `Bucket`=? AND `Used`>=?";
+
+    private final DataSource dataSource;
+    private final Logger logger;
+
+    // egresses with an existing lock row
+    private final Set<String> lockRows = ConcurrentHashMap.newKeySet();
+
+    public QuotaStorage(DataSource dataSource, Logger logger) {
+        this.dataSource = dataSource;
+        this.logger = logger;
+    }
+
+    public void createTable() throws SQLException {
+        String createQuotaStmt = "CREATE TABLE IF NOT EXISTS `" + QUOTA_TABLE + "` ("
+                + "`Egress` VARCHAR(64) NOT NULL, "
+                + "`Bucket` BIGINT NOT NULL, "
+                + "`Used` INTEGER NOT NULL, "
+                + "PRIMARY KEY (`Egress`, `Bucket`)"
+                + ')';
+
+        try (Connection con = dataSource.getConnection();
+             Statement createStmt = con.createStatement()) {
+            createStmt.executeUpdate(createQuotaStmt);
+        }
+    }
+
+    /**
+     * Lease requests if the network used less than the limit in the buckets since the given one.
+     *
+     * @param egress name of the public address
+     * @param bucket bucket the requests are counted in
+     * @param since first bucket of the sliding window
+     * @param amount preferred number of requests
+     * @param limit maximum number of requests within the window for the whole network
+     * @return number of granted requests - less than the amount if the quota is almost used or 0 on database errors
+     */
+    public int lease(String egress, long bucket, long since, int amount, int limit) {
+        try (Connection con = dataSource.getConnection()) {
+            return inLock(con, egress, () -> {
+                try (PreparedStatement deleteStmt = con.prepareStatement(DELETE_EXPIRED)) {
+                    deleteStmt.setString(1, egress);
+                    deleteStmt.setLong(2, since);
+                    deleteStmt.executeUpdate();
+                }
+
+                int used;
+                try (PreparedStatement loadStmt = con.prepareStatement(LOAD_USED)) {
+                    loadStmt.setString(1, egress);
+                    loadStmt.setLong(2, since);
+                    try (ResultSet resultSet = loadStmt.executeQuery()) {
+                        resultSet.next();
+                        used = resultSet.getInt(1);
+                    }
+                }
+
+                int granted = Math.min(amount, limit - used);
+                if (granted > 0) {
+                    addUsed(con, egress, bucket, granted);
+                }
+
+                return Math.max(granted, 0);
+            });
+        } catch (SQLException sqlEx) {
+            logger.error("Failed to lease Mojang quota of {}", egress, sqlEx);
+        }
+
+        return 0;
+    }
+
+    /**
+     * Give back leased requests that were never used.
+     *
+     * @param egress name of the public address
+     * @param bucket bucket the requests were counted in
+     * @param amount number of unused requests
+     */
+    public void giveBack(String egress, long bucket, int amount) {
+        try (Connection con = dataSource.getConnection();
+             PreparedStatement giveBackStmt = con.prepareStatement(GIVE_BACK)) {
+            giveBackStmt.setInt(1, amount);
+            giveBackStmt.setString(2, egress);
+            giveBackStmt.setLong(3, bucket);
+            giveBackStmt.setInt(4, amount);
+            giveBackStmt.executeUpdate();
+        } catch (SQLException sqlEx) {
+            logger.error("Failed to give back Mojang quota of {}", egress, sqlEx);
+        }
+    }
+
+    /**
+     * Mark the whole quota as used, so no server leases requests until this bucket leaves the window.
+     *
+     * @param egress name of the public address
+     * @param bucket current bucket
+     * @param limit maximum number of requests within the window for the whole network
+     */
+    public void exhaust(String egress, long bucket, int limit) {
+        try (Connection con = dataSource.getConnection()) {
+            inLock(con, egress, () -> {
+                addUsed(con, egress, bucket, limit);
+                return limit;
+            });
+        } catch (SQLException sqlEx) {
+            logger.error("Failed to exhaust Mojang quota of {}", egress, sqlEx);
+        }
+    }
+
+    private int inLock(Connection con, String egress, LockedUpdate update) throws SQLException {
+        if (!lockRows.contains(egress)) {
+            try (PreparedStatement insertStmt = con.prepareStatement(INSERT_LOCK)) {
+                insertStmt.setString(1, egress);
+                insertStmt.executeUpdate();
+            } catch (SQLException sqlEx) {
+                // another server inserted it already
+                logger.debug("Lock row of the Mojang quota of {} already exists", egress, sqlEx);
+            }
+
+            lockRows.add(egress);
+        }
+
+        con.setAutoCommit(false);
+        try {
+            try (PreparedStatement lockStmt = con.prepareStatement(LOCK)) {
+                lockStmt.setString(1, egress);
+                lockStmt.executeUpdate();
+            }
+
+            int result = update.run();
+            con.commit();
+            return result;
+        } catch (SQLException sqlEx) {
+            con.rollback();
+            throw sqlEx;
+        } finally {
+            con.setAutoCommit(true);
+        }
+    }
+
+    private static void addUsed(Connection con, String egress, long bucket, int amount) throws SQLException {
+        try (PreparedStatement addStmt = con.prepareStatement(ADD_USED)) {
+            addStmt.setInt(1, amount);
+            addStmt.setString(2, egress);
+            addStmt.setLong(3, bucket);
+            if (addStmt.executeUpdate() > 0) {
+                return;
+            }
+        }
+
+        // the lock makes sure that no other server inserts it in the meanwhile
+        try (PreparedStatement insertStmt = con.prepareStatement(INSERT_USED)) {
+            insertStmt.setString(1, egress);
+            insertStmt.setLong(2, bucket);
+            insertStmt.setInt(3, amount);
+            insertStmt.executeUpdate();
+        }
+    }
+
+    private interface LockedUpdate {
+
+        int run() throws SQLException;
+    }
+}
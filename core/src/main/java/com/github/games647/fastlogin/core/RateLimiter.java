@@ -46,8 +46,7 @@ public class RateLimiter {
      * @return true if allowed - false otherwise without any side effects
      */
     public boolean tryAcquire() {
-        // current time millis is not monotonic - it can jump back depending on user choice or NTP
-        long now = System.nanoTime() / 1_000_000;
+        long now = MonotonicClock.SYSTEM.millis();
 
         // after this the request should be expired
         long toBeExpired = now - expireTime;
@@ -0,0 +1,72 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2021 <Your name and contributors>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core;
+
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+
+/**
+ * Summarizes rejected work in at most one warning per interval. During a flood of connections a warning for every
+ * rejection would only spam the console.
+ */
+public class RejectionWarning {
+
+    private static final long WARN_INTERVAL = 10_000;
+
+    private final Logger logger;
+
+    private long lastWarn = Long.MIN_VALUE;
+    private long lastRejected;
+
+    public RejectionWarning(Logger logger) {
+        this.logger = logger;
+    }
+
+    /**
+     * Log the warning unless there was one within the last 10 seconds. The number of rejections since the last
+     * warning and the total are appended to the message.
+     *
+     * @param rejected total number of rejections
+     * @param message description of the saturated component
+     * @param args arguments of the message
+     */
+    public synchronized void warn(long rejected, String message, Object... args) {
+        long now = MonotonicClock.SYSTEM.millis();
+        if (lastWarn != Long.MIN_VALUE && now - lastWarn < WARN_INTERVAL) {
+            return;
+        }
+
+        long sinceLast = rejected - lastRejected;
+        lastWarn = now;
+        lastRejected = rejected;
+
+        Object[] params = Arrays.copyOf(args, args.length + 2);
+        params[args.length] = sinceLast;
+        params[args.length + 1] = rejected;
+        logger.warn(message + " - rejected {} since the last report ({} total)", params);
+    }
+}
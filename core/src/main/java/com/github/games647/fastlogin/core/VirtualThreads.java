@@ -0,0 +1,109 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2021 <Your name and contributors>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Virtual threads are only available on Java 21 or newer, but the plugin is compiled for Java 8. Therefore the
+ * builder methods are looked up at runtime. Older runtimes fall back to platform threads.
+ */
+final class VirtualThreads {
+
+    // Thread.ofVirtual().name(prefix, start).factory()
+    private static final MethodHandle VIRTUAL_FACTORY;
+
+    // Executors.newThreadPerTaskExecutor(factory)
+    private static final MethodHandle PER_TASK_EXECUTOR;
+
+    static {
+        MethodHandle virtualFactory = null;
+        MethodHandle perTaskExecutor = null;
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Class<?> virtualClass = Class.forName("java.lang.Thread$Builder$OfVirtual");
+
+            Lookup lookup = MethodHandles.publicLookup();
+            MethodHandle ofVirtual = lookup.findStatic(Thread.class, "ofVirtual", MethodType.methodType(virtualClass));
+            MethodHandle name = lookup.findVirtual(virtualClass, "name",
+                    MethodType.methodType(virtualClass, String.class, long.class));
+            MethodHandle factory = lookup.findVirtual(builderClass, "factory",
+                    MethodType.methodType(ThreadFactory.class));
+
+            // (String, long) -> ThreadFactory
+            MethodHandle named = MethodHandles.collectArguments(name, 0, ofVirtual);
+            virtualFactory = MethodHandles.filterReturnValue(named, factory.asType(
+                    MethodType.methodType(ThreadFactory.class, virtualClass)));
+            perTaskExecutor = lookup.findStatic(Executors.class, "newThreadPerTaskExecutor",
+                    MethodType.methodType(ExecutorService.class, ThreadFactory.class));
+        } catch (ReflectiveOperationException reflectiveEx) {
+            // older Java version
+            virtualFactory = null;
+            perTaskExecutor = null;
+        }
+
+        VIRTUAL_FACTORY = virtualFactory;
+        PER_TASK_EXECUTOR = perTaskExecutor;
+    }
+
+    private VirtualThreads() {
+        //Utility class
+    }
+
+    static boolean isSupported() {
+        return PER_TASK_EXECUTOR != null;
+    }
+
+    /**
+     * @param namePrefix prefix of the thread names
+     * @return executor that starts a new virtual thread for every task. Older runtimes get new or idle platform
+     * threads instead.
+     */
+    static ExecutorService newExecutor(String namePrefix) {
+        if (isSupported()) {
+            try {
+                ThreadFactory factory = (ThreadFactory) VIRTUAL_FACTORY.invoke(namePrefix, 1L);
+                return (ExecutorService) PER_TASK_EXECUTOR.invoke(factory);
+            } catch (Throwable throwable) {
+                throw new IllegalStateException("Failed to create virtual threads", throwable);
+            }
+        }
+
+        AtomicInteger counter = new AtomicInteger(1);
+        return Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, namePrefix + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
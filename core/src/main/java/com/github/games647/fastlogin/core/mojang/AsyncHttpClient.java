@@ -0,0 +1,952 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2021 <Your name and contributors>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.mojang;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLParameters;
+
+/**
+ * Minimal non-blocking HTTP/1.1 client. All connections are driven by a single selector thread, so a slow
+ * response doesn't occupy a thread while waiting. The returned futures are completed on this selector thread. Therefore
+ * dependent actions that are expensive or blocking should be moved to another executor. Host names and the delegated
+ * tasks of TLS handshakes are resolved and run on the executor of {@link #setExecutor(Executor)}.
+ *
+ * Connections are kept alive and reused for the same target and route, which saves the TCP and TLS handshake for most
+ * requests. Idle connections are closed after a while or if the server closes them.
+ */
+public class AsyncHttpClient implements Closeable {
+
+    private static final int SELECT_TIMEOUT = 100;
+    private static final int HTTPS_PORT = 443;
+    private static final int HTTP_PORT = 80;
+
+    private static final long IDLE_TIMEOUT = TimeUnit.SECONDS.toNanos(20);
+    private static final int MAX_IDLE_PER_TARGET = 4;
+
+    private final Queue<Exchange> pendingExchanges = new ConcurrentLinkedQueue<>();
+    private final Queue<Connection> resumedConnections = new ConcurrentLinkedQueue<>();
+    private final ThreadFactory threadFactory;
+    private final SSLContext sslContext;
+
+    // DNS lookups and TLS handshake tasks would block the selector thread
+    private volatile Executor executor = Runnable::run;
+
+    // only accessed by the selector thread - newest connection last
+    private final Map<PoolKey, Deque<Connection>> idleConnections = new HashMap<>();
+
+    private final AtomicLong openedConnections = new AtomicLong();
+    private final AtomicLong reusedConnections = new AtomicLong();
+    private final AtomicLong evictedConnections = new AtomicLong();
+
+    // selector of the current I/O thread - a new one is started on demand if the previous one stopped
+    private volatile Selector selector;
+    private volatile boolean running;
+    private boolean closed;
+
+    public AsyncHttpClient(ThreadFactory threadFactory) {
+        this(threadFactory, null);
+    }
+
+    /**
+     * @param threadFactory factory for the I/O thread
+     * @param sslContext context for HTTPS connections or null for the default one
+     */
+    AsyncHttpClient(ThreadFactory threadFactory, SSLContext sslContext) {
+        this.threadFactory = threadFactory;
+        this.sslContext = sslContext;
+    }
+
+    /**
+     * Send a GET request.
+     *
+     * @param uri http or https target
+     * @param timeout complete timeout in milliseconds for this request including connecting
+     * @return the response
+     */
+    public CompletableFuture<HttpResponse> get(URI uri, long timeout) {
+        return send("GET", uri, null, timeout, Route.DIRECT);
+    }
+
+    /**
+     * Send a request. The request body is sent as JSON.
+     *
+     * @param method HTTP method
+     * @param uri http or https target
+     * @param body request body or null
+     * @param timeout complete timeout in milliseconds for this request including connecting
+     * @param route local address and proxy to use
+     * @return the response
+     */
+    public CompletableFuture<HttpResponse> send(String method, URI uri, byte[] body, long timeout, Route route) {
+        Exchange exchange;
+        try {
+            exchange = new Exchange(method, uri, body, System.nanoTime() + timeout * 1_000_000, route);
+            synchronized (this) {
+                if (closed) {
+                    throw new IOException("HTTP client closed");
+                }
+            }
+        } catch (IllegalArgumentException | IOException ex) {
+            CompletableFuture<HttpResponse> failed = new CompletableFuture<>();
+            failed.completeExceptionally(ex);
+            return failed;
+        }
+
+        if (route.isProxy()) {
+            // the proxy resolves the target and its own address was resolved while loading the config
+            enqueue(exchange);
+        } else {
+            resolve(exchange);
+        }
+
+        return exchange.future;
+    }
+
+    /**
+     * @param executor runs the DNS lookups and the delegated tasks of TLS handshakes
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    private void resolve(Exchange exchange) {
+        PoolKey poolKey = exchange.poolKey;
+        try {
+            executor.execute(() -> {
+                if (exchange.future.isDone()) {
+                    return;
+                }
+
+                InetSocketAddress address = new InetSocketAddress(poolKey.host, poolKey.port);
+                if (address.isUnresolved()) {
+                    exchange.future.completeExceptionally(new UnknownHostException(poolKey.host));
+                    return;
+                }
+
+                exchange.address = address;
+                enqueue(exchange);
+            });
+        } catch (RejectedExecutionException rejectedEx) {
+            exchange.future.completeExceptionally(rejectedEx);
+        }
+    }
+
+    private void enqueue(Exchange exchange) {
+        Selector currentSelector;
+        try {
+            synchronized (this) {
+                // queue it while holding the lock, so a stopping I/O thread either fails it or a new one starts it
+                currentSelector = ensureRunning();
+                pendingExchanges.add(exchange);
+            }
+        } catch (IOException ioEx) {
+            exchange.future.completeExceptionally(ioEx);
+            return;
+        }
+
+        currentSelector.wakeup();
+    }
+
+    private void resume(Connection connection) {
+        Selector currentSelector;
+        synchronized (this) {
+            if (!running) {
+                // the stopped I/O thread already failed the exchange of this connection
+                return;
+            }
+
+            currentSelector = selector;
+            resumedConnections.add(connection);
+        }
+
+        currentSelector.wakeup();
+    }
+
+    /**
+     * @return number of new connections
+     */
+    public long getOpenedConnections() {
+        return openedConnections.get();
+    }
+
+    /**
+     * @return number of requests sent over a kept alive connection
+     */
+    public long getReusedConnections() {
+        return reusedConnections.get();
+    }
+
+    /**
+     * @return number of idle connections that were closed because of the timeout or by the server
+     */
+    public long getEvictedConnections() {
+        return evictedConnections.get();
+    }
+
+    private synchronized Selector ensureRunning() throws IOException {
+        if (closed) {
+            throw new IOException("HTTP client closed");
+        }
+
+        if (running) {
+            return selector;
+        }
+
+        Selector newSelector = Selector.open();
+        selector = newSelector;
+        running = true;
+
+        Thread ioThread = threadFactory.newThread(() -> runLoop(newSelector));
+        ioThread.start();
+        return newSelector;
+    }
+
+    private void runLoop(Selector selector) {
+        try {
+            loop(selector);
+        } finally {
+            // even after unexpected errors, so the next request starts a new I/O thread
+            failRemaining(selector);
+        }
+    }
+
+    private void loop(Selector selector) {
+        long lastTimeoutCheck = System.nanoTime();
+        while (running) {
+            try {
+                selector.select(SELECT_TIMEOUT);
+
+                Exchange pending;
+                while ((pending = pendingExchanges.poll()) != null) {
+                    start(pending);
+                }
+
+                Connection resumed;
+                while ((resumed = resumedConnections.poll()) != null) {
+                    resumed.resume();
+                }
+
+                for (SelectionKey key : selector.selectedKeys()) {
+                    Connection connection = (Connection) key.attachment();
+                    connection.handle(key);
+                }
+
+                selector.selectedKeys().clear();
+
+                long now = System.nanoTime();
+                if (now - lastTimeoutCheck >= SELECT_TIMEOUT * 1_000_000L) {
+                    lastTimeoutCheck = now;
+                    for (SelectionKey key : selector.keys()) {
+                        ((Connection) key.attachment()).checkTimeout(now);
+                    }
+                }
+            } catch (IOException | ClosedSelectorException ex) {
+                // shouldn't happen, because all errors of single connections are handled separately
+                break;
+            }
+        }
+    }
+
+    private void start(Exchange exchange) {
+        if (exchange.future.isDone()) {
+            // cancelled while it was queued, for example because the player disconnected
+            return;
+        }
+
+        Deque<Connection> idle = idleConnections.get(exchange.poolKey);
+        Connection connection = idle == null ? null : idle.pollLast();
+        if (connection != null) {
+            reusedConnections.incrementAndGet();
+            connection.assign(exchange, true);
+            return;
+        }
+
+        try {
+            connection = new Connection(exchange.poolKey, exchange.address);
+        } catch (IOException | NoSuchAlgorithmException ex) {
+            exchange.future.completeExceptionally(ex);
+            return;
+        }
+
+        openedConnections.incrementAndGet();
+        connection.assign(exchange, false);
+    }
+
+    private void release(Connection connection) {
+        Deque<Connection> idle = idleConnections.computeIfAbsent(connection.poolKey, key -> new ArrayDeque<>());
+        if (idle.size() >= MAX_IDLE_PER_TARGET) {
+            connection.close();
+            return;
+        }
+
+        idle.addLast(connection);
+    }
+
+    private void evict(Connection connection) {
+        Deque<Connection> idle = idleConnections.get(connection.poolKey);
+        if (idle != null) {
+            idle.remove(connection);
+            if (idle.isEmpty()) {
+                idleConnections.remove(connection.poolKey);
+            }
+        }
+
+        evictedConnections.incrementAndGet();
+        connection.close();
+    }
+
+    private void failRemaining(Selector stoppedSelector) {
+        List<Exchange> queued = new ArrayList<>();
+        Collection<SelectionKey> keys;
+        synchronized (this) {
+            running = false;
+
+            Exchange pending;
+            while ((pending = pendingExchanges.poll()) != null) {
+                queued.add(pending);
+            }
+
+            resumedConnections.clear();
+            try {
+                keys = new ArrayList<>(stoppedSelector.keys());
+            } catch (ClosedSelectorException closedEx) {
+                keys = Collections.emptyList();
+            }
+
+            idleConnections.clear();
+        }
+
+        // complete them without holding the lock - dependent actions could already send new requests
+        IOException closedEx = new IOException("HTTP client closed");
+        for (SelectionKey key : keys) {
+            ((Connection) key.attachment()).fail(closedEx);
+        }
+
+        queued.forEach(exchange -> exchange.future.completeExceptionally(closedEx));
+        try {
+            stoppedSelector.close();
+        } catch (IOException ignored) {
+            // already closed
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (running) {
+            running = false;
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Connections can only be reused for the same target through the same route.
+     */
+    private static class PoolKey {
+
+        private final Route route;
+        private final boolean secure;
+        private final String host;
+        private final int port;
+
+        PoolKey(Route route, boolean secure, String host, int port) {
+            this.route = route;
+            this.secure = secure;
+            this.host = host;
+            this.port = port;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) return true;
+            if (!(other instanceof PoolKey)) return false;
+            PoolKey poolKey = (PoolKey) other;
+            return secure == poolKey.secure && port == poolKey.port
+                    && route.equals(poolKey.route) && host.equals(poolKey.host);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(route, secure, host, port);
+        }
+    }
+
+    /**
+     * A single request and its response.
+     */
+    private static class Exchange {
+
+        private final CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+        private final PoolKey poolKey;
+        private final long deadline;
+
+        // resolved target of direct routes - proxies resolve the target themselves
+        private InetSocketAddress address;
+
+        private final ByteBuffer request;
+        private final ResponseParser parser = new ResponseParser();
+
+        // a kept alive connection could have been closed by the server in the meanwhile
+        private boolean retryable;
+
+        Exchange(String method, URI uri, byte[] body, long deadline, Route route) {
+            boolean secure = "https".equalsIgnoreCase(uri.getScheme());
+            if (!secure && !"http".equalsIgnoreCase(uri.getScheme())) {
+                throw new IllegalArgumentException("Unsupported scheme: " + uri);
+            }
+
+            int port = uri.getPort();
+            if (port < 0) {
+                port = secure ? HTTPS_PORT : HTTP_PORT;
+            }
+
+            this.poolKey = new PoolKey(route, secure, uri.getHost(), port);
+            this.deadline = deadline;
+
+            // plain HTTP requests through a proxy are sent with the absolute URI
+            this.request = encodeRequest(method, uri, body, route.isProxy() && !secure);
+        }
+
+        private static ByteBuffer encodeRequest(String method, URI uri, byte[] body, boolean absolute) {
+            String path = uri.getRawPath();
+            if (path == null || path.isEmpty()) {
+                path = "/";
+            }
+
+            if (uri.getRawQuery() != null) {
+                path += '?' + uri.getRawQuery();
+            }
+
+            if (absolute) {
+                path = uri.getScheme() + "://" + uri.getRawAuthority() + path;
+            }
+
+            StringBuilder head = new StringBuilder();
+            head.append(method).append(' ').append(path).append(" HTTP/1.1\r\n");
+            head.append("Host: ").append(uri.getHost());
+            if (uri.getPort() >= 0) {
+                head.append(':').append(uri.getPort());
+            }
+
+            head.append("\r\n");
+            head.append("User-Agent: FastLogin\r\n");
+            head.append("Accept: application/json\r\n");
+            if (body != null) {
+                head.append("Content-Type: application/json\r\n");
+                head.append("Content-Length: ").append(body.length).append("\r\n");
+            }
+
+            head.append("\r\n");
+
+            byte[] headBytes = head.toString().getBytes(StandardCharsets.ISO_8859_1);
+            ByteBuffer buffer = ByteBuffer.allocate(headBytes.length + (body == null ? 0 : body.length));
+            buffer.put(headBytes);
+            if (body != null) {
+                buffer.put(body);
+            }
+
+            buffer.flip();
+            return buffer;
+        }
+    }
+
+    /**
+     * Connection to a target that serves one exchange at a time.
+     */
+    private class Connection {
+
+        private final PoolKey poolKey;
+        private final InetSocketAddress address;
+
+        // CONNECT request to a proxy for HTTPS targets
+        private ByteBuffer tunnelRequest;
+        private ResponseParser tunnelParser;
+
+        private final SSLEngine engine;
+
+        private SocketChannel channel;
+        private SelectionKey key;
+
+        // network buffers are only used for TLS - otherwise we read into the application buffer directly
+        private ByteBuffer netOut;
+        private ByteBuffer netIn;
+        private ByteBuffer appIn;
+
+        // null if idle
+        private Exchange exchange;
+        private long idleSince;
+
+        // the handshake waits for the delegated tasks on the executor
+        private boolean delegating;
+
+        /**
+         * @param poolKey target and route
+         * @param resolved resolved target address or null if it's sent through a proxy
+         */
+        Connection(PoolKey poolKey, InetSocketAddress resolved) throws IOException, NoSuchAlgorithmException {
+            this.poolKey = poolKey;
+
+            Route route = poolKey.route;
+            if (route.isProxy()) {
+                this.address = route.getProxy();
+                if (poolKey.secure) {
+                    String target = poolKey.host + ':' + poolKey.port;
+                    String connect = "CONNECT " + target + " HTTP/1.1\r\nHost: " + target + "\r\n\r\n";
+                    tunnelRequest = ByteBuffer.wrap(connect.getBytes(StandardCharsets.ISO_8859_1));
+                    tunnelParser = new ResponseParser();
+                }
+            } else {
+                this.address = resolved;
+            }
+
+            if (address == null || address.isUnresolved()) {
+                throw new UnknownHostException("Host " + poolKey.host + " is not resolved");
+            }
+
+            if (poolKey.secure) {
+                SSLContext context = sslContext == null ? SSLContext.getDefault() : sslContext;
+                engine = context.createSSLEngine(poolKey.host, poolKey.port);
+                engine.setUseClientMode(true);
+
+                // verify that the certificate belongs to this host
+                SSLParameters parameters = engine.getSSLParameters();
+                parameters.setEndpointIdentificationAlgorithm("HTTPS");
+                engine.setSSLParameters(parameters);
+
+                int packetSize = engine.getSession().getPacketBufferSize();
+                netOut = ByteBuffer.allocate(packetSize);
+                netOut.flip();
+                netIn = ByteBuffer.allocate(packetSize);
+                appIn = ByteBuffer.allocate(engine.getSession().getApplicationBufferSize());
+            } else {
+                engine = null;
+                appIn = ByteBuffer.allocate(4 * 1_024);
+            }
+        }
+
+        void assign(Exchange newExchange, boolean reused) {
+            this.exchange = newExchange;
+            newExchange.retryable = reused;
+            try {
+                if (channel == null) {
+                    open();
+                } else {
+                    process();
+                }
+            } catch (IOException | RuntimeException ex) {
+                fail(ex);
+            }
+        }
+
+        private void open() throws IOException {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            if (poolKey.route.getLocalAddress() != null) {
+                channel.bind(new InetSocketAddress(poolKey.route.getLocalAddress(), 0));
+            }
+
+            key = channel.register(selector, 0, this);
+            if (channel.connect(address)) {
+                onConnected();
+            } else {
+                key.interestOps(SelectionKey.OP_CONNECT);
+            }
+        }
+
+        void handle(SelectionKey selectedKey) {
+            if (exchange == null) {
+                // idle connections shouldn't receive anything except the close of the server
+                evict(this);
+                return;
+            }
+
+            try {
+                if (selectedKey.isConnectable()) {
+                    if (!channel.finishConnect()) {
+                        return;
+                    }
+
+                    onConnected();
+                } else {
+                    process();
+                }
+            } catch (IOException | RuntimeException ex) {
+                fail(ex);
+            }
+        }
+
+        void checkTimeout(long now) {
+            if (exchange == null) {
+                if (now - idleSince > IDLE_TIMEOUT) {
+                    evict(this);
+                }
+            } else if (now - exchange.deadline > 0) {
+                fail(new SocketTimeoutException("Request to " + address + " timed out"));
+            }
+        }
+
+        private void onConnected() throws IOException {
+            if (tunnelRequest == null && engine != null) {
+                engine.beginHandshake();
+            }
+
+            process();
+        }
+
+        private void process() throws IOException {
+            if (tunnelRequest != null) {
+                if (!processTunnel()) {
+                    return;
+                }
+
+                engine.beginHandshake();
+            }
+
+            if (engine == null) {
+                processPlain();
+                return;
+            }
+
+            ByteBuffer request = exchange.request;
+            while (exchange != null) {
+                if (netOut.hasRemaining()) {
+                    channel.write(netOut);
+                    if (netOut.hasRemaining()) {
+                        key.interestOps(SelectionKey.OP_WRITE);
+                        return;
+                    }
+                }
+
+                HandshakeStatus status = engine.getHandshakeStatus();
+                if (status == HandshakeStatus.NEED_TASK) {
+                    delegateTasks();
+                    return;
+                } else if (status == HandshakeStatus.NEED_WRAP
+                        || (status == HandshakeStatus.NOT_HANDSHAKING && request.hasRemaining())) {
+                    wrap(request);
+                } else if (!unwrap()) {
+                    return;
+                }
+            }
+        }
+
+        private void delegateTasks() {
+            // tasks like the certificate validation can take a while - wait for them without any interest
+            delegating = true;
+            key.interestOps(0);
+            try {
+                executor.execute(() -> {
+                    Runnable task;
+                    while ((task = engine.getDelegatedTask()) != null) {
+                        task.run();
+                    }
+
+                    AsyncHttpClient.this.resume(this);
+                });
+            } catch (RejectedExecutionException rejectedEx) {
+                delegating = false;
+                fail(rejectedEx);
+            }
+        }
+
+        void resume() {
+            if (!delegating) {
+                return;
+            }
+
+            delegating = false;
+            if (exchange == null) {
+                // failed in the meanwhile, for example by the timeout
+                return;
+            }
+
+            try {
+                process();
+            } catch (IOException | RuntimeException ex) {
+                fail(ex);
+            }
+        }
+
+        /**
+         * @return true if the tunnel is established
+         */
+        private boolean processTunnel() throws IOException {
+            if (tunnelRequest.hasRemaining()) {
+                channel.write(tunnelRequest);
+                if (tunnelRequest.hasRemaining()) {
+                    key.interestOps(SelectionKey.OP_WRITE);
+                    return false;
+                }
+            }
+
+            // the proxy cannot send anything else, because the TLS handshake starts with our message
+            ByteBuffer buffer = ByteBuffer.allocate(512);
+            while (true) {
+                buffer.clear();
+                int read = channel.read(buffer);
+                if (read < 0) {
+                    throw new EOFException("Proxy closed the connection");
+                }
+
+                if (read == 0) {
+                    key.interestOps(SelectionKey.OP_READ);
+                    return false;
+                }
+
+                buffer.flip();
+                if (tunnelParser.feedHead(buffer)) {
+                    int statusCode = tunnelParser.toResponse().getStatusCode();
+                    if (statusCode != 200) {
+                        throw new IOException("Proxy " + address + " refused the tunnel with " + statusCode);
+                    }
+
+                    tunnelRequest = null;
+                    tunnelParser = null;
+                    return true;
+                }
+            }
+        }
+
+        private void processPlain() throws IOException {
+            ByteBuffer request = exchange.request;
+            if (request.hasRemaining()) {
+                channel.write(request);
+                if (request.hasRemaining()) {
+                    key.interestOps(SelectionKey.OP_WRITE);
+                    return;
+                }
+            }
+
+            while (exchange != null) {
+                appIn.clear();
+                int read = channel.read(appIn);
+                if (read < 0) {
+                    onClose();
+                    return;
+                }
+
+                if (read == 0) {
+                    key.interestOps(SelectionKey.OP_READ);
+                    return;
+                }
+
+                appIn.flip();
+                if (exchange.parser.feed(appIn)) {
+                    complete();
+                }
+            }
+        }
+
+        private void wrap(ByteBuffer request) throws SSLException {
+            // there is no remaining data, because everything was flushed before
+            netOut.clear();
+            SSLEngineResult result = engine.wrap(request, netOut);
+            netOut.flip();
+            if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                throw new SSLException("Engine closed while sending the request");
+            }
+        }
+
+        /**
+         * @return true if the processing could continue, false if we have to wait for more data
+         */
+        private boolean unwrap() throws IOException {
+            netIn.flip();
+            SSLEngineResult result = engine.unwrap(netIn, appIn);
+            netIn.compact();
+
+            switch (result.getStatus()) {
+                case OK:
+                    if (appIn.position() > 0) {
+                        appIn.flip();
+                        boolean done = exchange.parser.feed(appIn);
+                        appIn.clear();
+                        if (done) {
+                            complete();
+                            return false;
+                        }
+                    }
+
+                    if (result.bytesConsumed() > 0 || result.bytesProduced() > 0) {
+                        return true;
+                    }
+
+                    return readNetwork();
+                case BUFFER_UNDERFLOW:
+                    if (!netIn.hasRemaining()) {
+                        netIn = enlarge(netIn, engine.getSession().getPacketBufferSize());
+                    }
+
+                    return readNetwork();
+                case BUFFER_OVERFLOW:
+                    appIn = enlarge(appIn, engine.getSession().getApplicationBufferSize());
+                    return true;
+                case CLOSED:
+                default:
+                    onClose();
+                    return false;
+            }
+        }
+
+        private boolean readNetwork() throws IOException {
+            int read = channel.read(netIn);
+            if (read < 0) {
+                try {
+                    engine.closeInbound();
+                } catch (SSLException sslEx) {
+                    // missing close_notify - the response parser verifies if all data is received
+                }
+
+                onClose();
+                return false;
+            }
+
+            if (read == 0) {
+                key.interestOps(SelectionKey.OP_READ);
+                return false;
+            }
+
+            return true;
+        }
+
+        private ByteBuffer enlarge(ByteBuffer buffer, int additional) {
+            ByteBuffer newBuffer = ByteBuffer.allocate(buffer.capacity() + additional);
+            buffer.flip();
+            newBuffer.put(buffer);
+            return newBuffer;
+        }
+
+        private void onClose() throws IOException {
+            ResponseParser parser = exchange.parser;
+            if (parser.finishOnClose()) {
+                complete();
+            } else if (exchange.retryable && !parser.hasData()) {
+                // the server closed the kept alive connection before we sent the request
+                retry();
+            } else {
+                throw new EOFException("Connection closed before the response was complete");
+            }
+        }
+
+        private void retry() {
+            Exchange retried = exchange;
+            exchange = null;
+            close();
+
+            retried.request.rewind();
+            retried.retryable = false;
+            try {
+                Connection connection = new Connection(poolKey, retried.address);
+                openedConnections.incrementAndGet();
+                connection.assign(retried, false);
+            } catch (IOException | NoSuchAlgorithmException ex) {
+                retried.future.completeExceptionally(ex);
+            }
+        }
+
+        private void complete() {
+            Exchange completed = exchange;
+            exchange = null;
+
+            // leftover TLS records would belong to nothing
+            boolean reusable = completed.parser.isKeepAlive() && (engine == null || netIn.position() == 0);
+            if (reusable && running) {
+                idleSince = System.nanoTime();
+                key.interestOps(SelectionKey.OP_READ);
+                release(this);
+            } else {
+                close();
+            }
+
+            completed.future.complete(completed.parser.toResponse());
+        }
+
+        void fail(Throwable throwable) {
+            Exchange failed = exchange;
+            if (failed != null && failed.retryable && !failed.parser.hasData() && throwable instanceof IOException
+                    && !(throwable instanceof SocketTimeoutException) && running) {
+                // writing to a connection that was closed by the server
+                retry();
+                return;
+            }
+
+            exchange = null;
+            close();
+            if (failed != null) {
+                failed.future.completeExceptionally(throwable);
+            }
+        }
+
+        void close() {
+            if (key != null) {
+                key.cancel();
+            }
+
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // we don't need this connection anymore
+                }
+            }
+        }
+    }
+}
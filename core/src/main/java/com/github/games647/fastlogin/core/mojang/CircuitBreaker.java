@@ -0,0 +1,181 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2021 <Your name and contributors>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.mojang;
+
+import com.github.games647.fastlogin.core.MonotonicClock;
+
+/**
+ * Stops requests against a Mojang service if too many of the recent calls failed or were too slow. Otherwise every
+ * login would wait until the timeout during an outage and occupy a thread in the meanwhile.
+ *
+ * After the open duration a single probe call is permitted. If it succeeds, the breaker closes again otherwise it
+ * stays open for another duration.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+
+        CLOSED,
+
+        OPEN,
+
+        HALF_OPEN
+    }
+
+    private final MonotonicClock clock;
+
+    // outcome of the recent calls - true if failed
+    private final boolean[] outcomes;
+    private final int failureRate;
+    private final long slowCallThreshold;
+    private final long openDuration;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private boolean probing;
+
+    private int position;
+    private int calls;
+    private int failures;
+
+    /**
+     * @param windowSize number of recent calls to evaluate
+     * @param failureRate percentage of failed or slow calls within the window to open the breaker
+     * @param slowCallThreshold calls taking at least this amount of milliseconds are counted as failed
+     * @param openDuration time in milliseconds until a probe call is permitted
+     */
+    public CircuitBreaker(int windowSize, int failureRate, long slowCallThreshold, long openDuration) {
+        this(windowSize, failureRate, slowCallThreshold, openDuration, MonotonicClock.SYSTEM);
+    }
+
+    /**
+     * @param clock source of the time
+     */
+    CircuitBreaker(int windowSize, int failureRate, long slowCallThreshold, long openDuration, MonotonicClock clock) {
+        this.clock = clock;
+        this.outcomes = new boolean[Math.max(windowSize, 1)];
+        this.failureRate = failureRate;
+        this.slowCallThreshold = slowCallThreshold;
+        this.openDuration = openDuration;
+    }
+
+    /**
+     * Ask if a call is permitted. If so, the outcome has to be reported using {@link #onSuccess(long)},
+     * {@link #onFailure()} or {@link #release()}.
+     *
+     * @return true if the call should be made
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN) {
+            if (clock.millis() - openedAt < openDuration) {
+                return false;
+            }
+
+            state = State.HALF_OPEN;
+            probing = false;
+        }
+
+        if (state == State.HALF_OPEN) {
+            if (probing) {
+                // only a single probe at a time
+                return false;
+            }
+
+            probing = true;
+        }
+
+        return true;
+    }
+
+    /**
+     * @param duration time in milliseconds the call took
+     */
+    public synchronized void onSuccess(long duration) {
+        record(duration >= slowCallThreshold);
+    }
+
+    public synchronized void onFailure() {
+        record(true);
+    }
+
+    /**
+     * The permitted call wasn't made or its outcome says nothing about the service like hitting our own rate-limit.
+     */
+    public synchronized void release() {
+        probing = false;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    private void record(boolean failed) {
+        if (state == State.HALF_OPEN) {
+            probing = false;
+            if (failed) {
+                open();
+            } else {
+                state = State.CLOSED;
+            }
+
+            return;
+        }
+
+        if (state == State.OPEN) {
+            // late outcome of a call made before opening
+            return;
+        }
+
+        if (calls == outcomes.length) {
+            if (outcomes[position]) {
+                failures--;
+            }
+        } else {
+            calls++;
+        }
+
+        outcomes[position] = failed;
+        position = (position + 1) % outcomes.length;
+        if (failed) {
+            failures++;
+        }
+
+        // wait for a full window, so a single failure after startup doesn't open it
+        if (calls == outcomes.length && failures * 100 >= failureRate * calls) {
+            open();
+        }
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = clock.millis();
+
+        // start with a fresh window after closing it again
+        position = 0;
+        calls = 0;
+        failures = 0;
+    }
+}
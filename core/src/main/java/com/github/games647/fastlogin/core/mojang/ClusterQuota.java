@@ -0,0 +1,329 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2021 <Your name and contributors>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.mojang;
+
+import com.github.games647.fastlogin.core.QuotaStorage;
+
+import java.net.InetAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+
+/**
+ * Shares the Mojang rate-limit of an outgoing address between all servers of a network that use the same database.
+ * Every server leases small chunks of the quota from the database and spends them locally, so the sum of all requests
+ * stays below the limit even if the servers are behind the same NAT.
+ *
+ * The quota is counted in buckets of one minute aligned to the wall clock, because it's shared across machines. A
+ * lease is counted in the next bucket and can be spent until that bucket is over. New leases are only granted if the
+ * buckets of the last 10 minutes and the ones leased ahead contain less than the limit, so every 10 minutes stay below
+ * the limit instead of only the fixed windows. Unused requests of expired leases are given back.
+ *
+ * Logins never wait for the database. They only spend the local lease and the database is queried on the executor.
+ */
+public class ClusterQuota {
+
+    private static final long BUCKET = TimeUnit.MINUTES.toMillis(1);
+
+    // 10 minutes of the Mojang window together with the bucket that is currently spent
+    private static final int WINDOW_BUCKETS = 11;
+
+    // don't ask the database again for every request if the network already used the whole quota
+    private static final long RETRY_DELAY = TimeUnit.SECONDS.toMillis(1);
+
+    private final Map<Route, Lease> leases = new ConcurrentHashMap<>();
+    private final AtomicBoolean renewRequested = new AtomicBoolean();
+
+    private final QuotaStorage storage;
+    private final Logger logger;
+    private final String defaultEgress;
+    private final int limit;
+    private final int leaseSize;
+    private final Executor executor;
+    private final LongSupplier clock;
+
+    /**
+     * @param storage shared database
+     * @param logger logger for the database changes
+     * @param defaultEgress name of the public address of the default route - equal on all servers behind the same NAT
+     * @param limit maximum number of requests per address within 10 minutes for the whole network
+     * @param leaseSize number of requests to lease at once
+     * @param executor executor for the database queries
+     */
+    public ClusterQuota(QuotaStorage storage, Logger logger, String defaultEgress, int limit, int leaseSize,
+                        Executor executor) {
+        this(storage, logger, defaultEgress, limit, leaseSize, executor, System::currentTimeMillis);
+    }
+
+    ClusterQuota(QuotaStorage storage, Logger logger, String defaultEgress, int limit, int leaseSize,
+                 Executor executor, LongSupplier clock) {
+        this.storage = storage;
+        this.logger = logger;
+        this.defaultEgress = defaultEgress;
+        this.limit = limit;
+        this.leaseSize = Math.max(1, Math.min(leaseSize, limit));
+        this.executor = executor;
+        this.clock = clock;
+    }
+
+    /**
+     * Take one request of the local lease. This never blocks - if the lease runs low, a new one will be requested in
+     * the background.
+     *
+     * @param route direct route
+     * @return false if the local lease is empty, because the network used the quota of this route or the new lease
+     * isn't there yet
+     */
+    public boolean tryAcquire(Route route) {
+        if (route.isProxy()) {
+            // proxies are not shared
+            return true;
+        }
+
+        Lease lease = leases.computeIfAbsent(route, Lease::new);
+        long bucket = bucket(clock.getAsLong());
+        boolean acquired = lease.tryAcquire(bucket);
+        if (lease.isLow(bucket)) {
+            scheduleRenew();
+        }
+
+        return acquired;
+    }
+
+    /**
+     * Give back a request that was acquired but not used. It's only returned to the local lease.
+     *
+     * @param route direct route
+     */
+    public void release(Route route) {
+        Lease lease = leases.get(route);
+        if (lease != null) {
+            lease.release(bucket(clock.getAsLong()));
+        }
+    }
+
+    /**
+     * Mojang rate-limited us anyway. Drop the local lease and mark the quota as used for all servers in the
+     * background.
+     *
+     * @param route rate-limited route
+     */
+    public void markRateLimited(Route route) {
+        Lease lease = leases.get(route);
+        if (lease != null) {
+            lease.exhaust(bucket(clock.getAsLong()));
+            scheduleRenew();
+        }
+    }
+
+    /**
+     * Synchronize the local leases with the database: give back expired requests, mark rate-limited routes and lease
+     * new requests ahead of time for routes that used more than half of their lease. This blocks on the database, so
+     * it should only be called from a background thread.
+     */
+    public synchronized void renew() {
+        renewRequested.set(false);
+        for (Lease lease : leases.values()) {
+            lease.sync(clock.getAsLong());
+        }
+    }
+
+    /**
+     * @param routes direct routes that should be leased ahead of time
+     */
+    public void register(Iterable<Route> routes) {
+        for (Route route : routes) {
+            if (!route.isProxy()) {
+                leases.computeIfAbsent(route, Lease::new);
+            }
+        }
+    }
+
+    private void scheduleRenew() {
+        if (!renewRequested.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            executor.execute(this::renew);
+        } catch (RejectedExecutionException rejectedEx) {
+            // shutting down - the periodic renewal catches up otherwise
+            renewRequested.set(false);
+        }
+    }
+
+    private static long bucket(long now) {
+        return now / BUCKET;
+    }
+
+    private class Lease {
+
+        private final String egress;
+
+        // leases of the current and the next bucket - older one is spent first, because it expires earlier
+        private final Slot older = new Slot();
+        private final Slot newer = new Slot();
+
+        // unused requests of expired slots by bucket
+        private final Map<Long, Integer> expired = new HashMap<>();
+
+        private long exhaustedBucket = -1;
+        private int exhaustions;
+        private long nextRetry;
+
+        Lease(Route route) {
+            InetAddress address = route.getLocalAddress();
+            this.egress = address == null ? defaultEgress : address.getHostAddress();
+        }
+
+        synchronized boolean tryAcquire(long bucket) {
+            expire(bucket);
+            Slot slot = older.remaining > 0 ? older : newer;
+            if (slot.remaining > 0) {
+                slot.remaining--;
+                return true;
+            }
+
+            return false;
+        }
+
+        synchronized void release(long bucket) {
+            expire(bucket);
+            if (older.bucket >= bucket) {
+                older.remaining++;
+            } else if (newer.bucket >= bucket) {
+                newer.remaining++;
+            }
+        }
+
+        synchronized boolean isLow(long bucket) {
+            expire(bucket);
+            return older.remaining + newer.remaining < Math.max(1, leaseSize / 2);
+        }
+
+        synchronized void exhaust(long bucket) {
+            expire(bucket);
+            // already counted in the database
+            older.remaining = 0;
+            newer.remaining = 0;
+            exhaustedBucket = bucket;
+            exhaustions++;
+        }
+
+        /**
+         * Plans the changes under the lock, but queries the database outside of it, so logins can still spend the
+         * lease in the meanwhile.
+         */
+        void sync(long now) {
+            long bucket = bucket(now);
+            Map<Long, Integer> giveBack;
+            long exhausted;
+            int planned;
+            boolean renew;
+            synchronized (this) {
+                renew = isLow(bucket) && now >= nextRetry;
+                giveBack = new HashMap<>(expired);
+                expired.clear();
+
+                exhausted = exhaustedBucket;
+                exhaustedBucket = -1;
+                planned = exhaustions;
+            }
+
+            for (Entry<Long, Integer> entry : giveBack.entrySet()) {
+                storage.giveBack(egress, entry.getKey(), entry.getValue());
+            }
+
+            if (exhausted >= 0) {
+                logger.debug("Marking the Mojang quota of {} as used for the whole network", egress);
+                storage.exhaust(egress, exhausted, limit);
+            }
+
+            if (!renew) {
+                return;
+            }
+
+            long leaseBucket = bucket + 1;
+            int granted = storage.lease(egress, leaseBucket, leaseBucket - WINDOW_BUCKETS, leaseSize, limit);
+            synchronized (this) {
+                if (granted <= 0) {
+                    nextRetry = now + RETRY_DELAY;
+                } else if (planned == exhaustions) {
+                    add(bucket(clock.getAsLong()), leaseBucket, granted);
+                }
+
+                // rate-limited in the meanwhile - the network is marked as used anyway, so the lease is dropped
+            }
+        }
+
+        private void add(long bucket, long leaseBucket, int granted) {
+            if (newer.bucket == leaseBucket) {
+                newer.remaining += granted;
+            } else {
+                expire(bucket);
+                moveExpired(older);
+                older.bucket = newer.bucket;
+                older.remaining = newer.remaining;
+                newer.bucket = leaseBucket;
+                newer.remaining = granted;
+            }
+
+            // the database query took so long that the lease is already over
+            expire(bucket);
+        }
+
+        private void expire(long bucket) {
+            if (older.bucket < bucket) {
+                moveExpired(older);
+            }
+
+            if (newer.bucket < bucket) {
+                moveExpired(newer);
+            }
+        }
+
+        private void moveExpired(Slot slot) {
+            if (slot.remaining > 0) {
+                expired.merge(slot.bucket, slot.remaining, Integer::sum);
+                slot.remaining = 0;
+            }
+        }
+    }
+
+    private static class Slot {
+
+        private long bucket = -1;
+        private int remaining;
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2021 <Your name and contributors>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.mojang;
+
+import com.github.games647.craftapi.model.Profile;
+import com.github.games647.fastlogin.core.HashedWheelTimer;
+import com.github.games647.fastlogin.core.HashedWheelTimer.Timeout;
+import com.github.games647.fastlogin.core.MonotonicClock;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups that hit the rate-limit wait here until the sliding window frees requests again. They are retried in the
+ * order they arrived, but only as many at once as there are requests available. Lookups that cannot be made before
+ * their deadline fail with {@link RateLimitReachedException}.
+ */
+public class DeferredLookupQueue {
+
+    // lower bound of retries, because the shared cluster quota could still deny requests that are free locally
+    private static final long MIN_DELAY = 250;
+
+    private final Deque<Entry> queue = new ArrayDeque<>();
+
+    private final MojangApiConnector connector;
+    private final HashedWheelTimer timer;
+    private final Executor executor;
+    private final long maxWait;
+
+    private Timeout drainTask;
+    private long drainTime;
+
+    /**
+     * @param connector connector to retry the lookups with
+     * @param timer timer for the retries
+     * @param executor executor for the blocking lookups
+     * @param maxWait maximum time in milliseconds a lookup waits for the rate-limit
+     */
+    public DeferredLookupQueue(MojangApiConnector connector, HashedWheelTimer timer, Executor executor,
+                               long maxWait) {
+        this.connector = connector;
+        this.timer = timer;
+        this.executor = executor;
+        this.maxWait = maxWait;
+    }
+
+    /**
+     * Queue the lookup of this name.
+     *
+     * @param name player name
+     * @return the result of the retry. It fails with {@link RateLimitReachedException} if the deadline passed.
+     */
+    public CompletableFuture<Optional<Profile>> submit(String name) {
+        return submit(name, maxWait);
+    }
+
+    /**
+     * Queue the lookup of this name.
+     *
+     * @param name player name
+     * @param wait maximum time in milliseconds - it's capped by the configured maximum
+     * @return the result of the retry. It fails with {@link RateLimitReachedException} if the deadline passed.
+     */
+    public CompletableFuture<Optional<Profile>> submit(String name, long wait) {
+        Entry entry = new Entry(name, MonotonicClock.SYSTEM.millis() + Math.min(maxWait, wait));
+        synchronized (this) {
+            queue.addLast(entry);
+            scheduleDrain();
+        }
+
+        return entry.future;
+    }
+
+    /**
+     * @return number of lookups waiting for the rate-limit
+     */
+    public synchronized int size() {
+        return queue.size();
+    }
+
+    private void retry(Entry entry) {
+        try {
+            entry.future.complete(connector.findProfile(entry.name));
+        } catch (RateLimitReachedException rateLimitEx) {
+            // another request took it or Mojang still rejects us - keep the place in the queue
+            synchronized (this) {
+                queue.addFirst(entry);
+                scheduleDrain();
+            }
+        } catch (IOException | RuntimeException ex) {
+            entry.future.completeExceptionally(ex);
+        }
+    }
+
+    private synchronized void drain() {
+        drainTask = null;
+
+        long now = MonotonicClock.SYSTEM.millis();
+        for (Iterator<Entry> iterator = queue.iterator(); iterator.hasNext(); ) {
+            Entry entry = iterator.next();
+            if (entry.deadline <= now) {
+                iterator.remove();
+                entry.future.completeExceptionally(new RateLimitReachedException(
+                        "Rate-limit didn't free up in time for " + entry.name));
+            }
+        }
+
+        int available = connector.getAvailableRequests();
+        while (available-- > 0 && !queue.isEmpty()) {
+            Entry entry = queue.pollFirst();
+            executor.execute(() -> retry(entry));
+        }
+
+        if (!queue.isEmpty()) {
+            scheduleDrain();
+        }
+    }
+
+    private void scheduleDrain() {
+        long now = MonotonicClock.SYSTEM.millis();
+        long delay = Math.max(MIN_DELAY, connector.getRetryDelay());
+        for (Entry entry : queue) {
+            // fail them on time instead of waiting for the rate-limit
+            delay = Math.min(delay, Math.max(0, entry.deadline - now));
+        }
+
+        long time = now + delay;
+        if (drainTask != null) {
+            if (drainTime <= time) {
+                return;
+            }
+
+            drainTask.cancel();
+        }
+
+        drainTime = time;
+        drainTask = timer.schedule(this::drain, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private static class Entry {
+
+        private final String name;
+        private final long deadline;
+        private final CompletableFuture<Optional<Profile>> future = new CompletableFuture<>();
+
+        Entry(String name, long deadline) {
+            this.name = name;
+            this.deadline = deadline;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2021 <Your name and contributors>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.mojang;
+
+import com.github.games647.fastlogin.core.MonotonicClock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ordered list of Yggdrasil compatible servers for the same API like the official one and a caching mirror. Requests
+ * go to the first available endpoint and fail over to the next one. Endpoints failing multiple times in a row are
+ * skipped for a while, but still used as last resort.
+ */
+public class EndpointList {
+
+    private static final int MAX_FAILURES = 3;
+    private static final long COOLDOWN = TimeUnit.SECONDS.toMillis(30);
+
+    // weight of a new sample in the moving average
+    private static final double SMOOTHING = 0.3;
+
+    private final List<Endpoint> endpoints = new ArrayList<>();
+
+    /**
+     * @param urls base URLs without a trailing slash ordered by preference
+     */
+    public EndpointList(List<String> urls) {
+        if (urls.isEmpty()) {
+            throw new IllegalArgumentException("At least one endpoint is required");
+        }
+
+        for (String url : urls) {
+            endpoints.add(new Endpoint(url));
+        }
+    }
+
+    /**
+     * @return all endpoints - available ones first in the configured order
+     */
+    public List<Endpoint> getOrdered() {
+        long now = MonotonicClock.SYSTEM.millis();
+
+        List<Endpoint> ordered = new ArrayList<>(endpoints.size());
+        List<Endpoint> skipped = new ArrayList<>();
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.isAvailable(now)) {
+                ordered.add(endpoint);
+            } else {
+                skipped.add(endpoint);
+            }
+        }
+
+        ordered.addAll(skipped);
+        return ordered;
+    }
+
+    /**
+     * @return the endpoint that would be tried first
+     */
+    public Endpoint getPrimary() {
+        return getOrdered().get(0);
+    }
+
+    public List<Endpoint> getEndpoints() {
+        return Collections.unmodifiableList(endpoints);
+    }
+
+    public static class Endpoint {
+
+        private final String url;
+
+        // moving average in milliseconds or negative if unknown
+        private double latency = -1;
+        private int failures;
+        private long retryTime;
+
+        private Endpoint(String url) {
+            this.url = url;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        /**
+         * @return average latency of the recent requests in milliseconds or a negative value if unknown
+         */
+        public synchronized double getLatency() {
+            return latency;
+        }
+
+        /**
+         * @param sample time in milliseconds of the request
+         */
+        public synchronized void onSuccess(long sample) {
+            if (latency < 0) {
+                latency = sample;
+            } else {
+                latency += SMOOTHING * (sample - latency);
+            }
+
+            failures = 0;
+        }
+
+        public synchronized void onFailure() {
+            failures++;
+            if (failures >= MAX_FAILURES) {
+                // try it again with real requests after the cooldown
+                retryTime = MonotonicClock.SYSTEM.millis() + COOLDOWN;
+            }
+        }
+
+        synchronized boolean isAvailable(long now) {
+            return failures < MAX_FAILURES || now >= retryTime;
+        }
+
+        @Override
+        public String toString() {
+            return url;
+        }
+    }
+}
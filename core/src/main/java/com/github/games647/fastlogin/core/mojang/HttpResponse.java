@@ -0,0 +1,92 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2021 <Your name and contributors>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.mojang;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Complete response received by the {@link AsyncHttpClient}.
+ */
+public class HttpResponse {
+
+    private final int statusCode;
+    private final Map<String, String> headers;
+
+    private final byte[] buffer;
+    private final int bodyOffset;
+    private final int bodyLength;
+
+    HttpResponse(int statusCode, Map<String, String> headers, byte[] buffer, int bodyOffset, int bodyLength) {
+        this.statusCode = statusCode;
+        this.headers = headers;
+        this.buffer = buffer;
+        this.bodyOffset = bodyOffset;
+        this.bodyLength = bodyLength;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * @param name case-insensitive header name
+     * @return the header value or null if not present
+     */
+    public String getHeader(String name) {
+        return headers.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    public int getBodyLength() {
+        return bodyLength;
+    }
+
+    /**
+     * @return stream of the response body without copying it
+     */
+    public InputStream getBody() {
+        return new ByteArrayInputStream(buffer, bodyOffset, bodyLength);
+    }
+
+    /**
+     * @return UTF-8 reader of the response body without copying it
+     */
+    Reader getBodyReader() {
+        return new Utf8ByteReader(buffer, bodyOffset, bodyLength);
+    }
+
+    @Override
+    public String toString() {
+        return this.getClass().getSimpleName() + '{' +
+                "statusCode=" + statusCode +
+                ", headers=" + headers +
+                ", bodyLength=" + bodyLength +
+                '}';
+    }
+}
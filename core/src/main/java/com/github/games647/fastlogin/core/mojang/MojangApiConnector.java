@@ -23,3 +23,727 @@
  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
  * SOFTWARE.
  */
+package com.github.games647.fastlogin.core.mojang;
+
+import com.github.games647.craftapi.UUIDAdapter;
+import com.github.games647.craftapi.model.Profile;
+import com.github.games647.craftapi.model.auth.Verification;
+import com.github.games647.fastlogin.core.HashedWheelTimer;
+import com.github.games647.fastlogin.core.HashedWheelTimer.Timeout;
+import com.github.games647.fastlogin.core.MonotonicClock;
+import com.google.gson.Gson;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.Proxy;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+
+/**
+ * Entry point for all of our Mojang requests. Concurrent lookups of the same name (like spam reconnects or bots
+ * using the same name) are coalesced, so only the first caller makes the request while the others wait for its result.
+ * Different names could be further collected into bulk requests.
+ *
+ * Name lookups are routed through the outgoing address or proxy with the most remaining requests within the
+ * rate-limit. Session verifications are made non-blocking, so slow responses of the session server don't occupy any
+ * threads. Both services are guarded by a circuit breaker, so requests fail fast during outages. Slow session
+ * verifications could be hedged using another route. Both services could be served by multiple Yggdrasil compatible
+ * endpoints with a fail over between them.
+ */
+public class MojangApiConnector {
+
+    public static final String API_URL = "https://api.mojang.com";
+    public static final String SESSION_URL = "https://sessionserver.mojang.com";
+
+    private static final String PROFILE_PATH = "/users/profiles/minecraft/";
+    private static final String BULK_PATH = "/profiles/minecraft";
+    private static final String NAME_PATH = "/session/minecraft/profile/";
+    private static final String HAS_JOINED_PATH = "/session/minecraft/hasJoined";
+    private static final long PROBE_INTERVAL = TimeUnit.SECONDS.toMillis(30);
+
+    private static final int RATE_LIMIT_CODE = 429;
+    private static final long RATE_LIMIT_WINDOW = TimeUnit.MINUTES.toMillis(10);
+
+    private static final int LOOKUP_TIMEOUT = 5_000;
+    private static final int SESSION_TIMEOUT = 5_000;
+
+    // names that cannot belong to a paid account - like the former craftapi resolver, they are never requested
+    private static final Pattern VALID_NAME = Pattern.compile("^\\w{2,16}$");
+
+    private final Gson gson = new Gson();
+    private final ResponseDecoder decoder = new ResponseDecoder();
+
+    private final ConcurrentMap<String, CompletableFuture<Optional<Profile>>> pendingLookups =
+            new ConcurrentHashMap<>();
+
+    private final AsyncHttpClient httpClient;
+    private final Logger logger;
+
+    private EndpointList apiEndpoints = new EndpointList(Collections.singletonList(API_URL));
+    private EndpointList sessionEndpoints = new EndpointList(Collections.singletonList(SESSION_URL));
+
+    private RouteScheduler routeScheduler;
+    // the session server has a rate-limit of its own
+    private RouteScheduler sessionScheduler;
+    private ClusterQuota clusterQuota;
+    private ProfileBatcher batcher;
+    private DeferredLookupQueue retryQueue;
+
+    private CircuitBreaker profileBreaker;
+    private CircuitBreaker sessionBreaker;
+
+    // continuations of lookups like parsing and retries - the I/O thread of the http client shouldn't be blocked
+    private volatile Executor executor = Runnable::run;
+
+    private final AtomicInteger hedgeRoute = new AtomicInteger();
+    private final HashedWheelTimer timer;
+    private RequestHedger hedger;
+    private Timeout probeTask;
+
+    /**
+     * @param logger logger
+     * @param threadFactory factory for the I/O thread
+     * @param timer shared timer for hedging, retries and proxy probes
+     */
+    public MojangApiConnector(Logger logger, ThreadFactory threadFactory, HashedWheelTimer timer) {
+        this.httpClient = new AsyncHttpClient(threadFactory);
+        this.logger = logger;
+        this.timer = timer;
+        this.routeScheduler = new RouteScheduler(Collections.emptyList(), Collections.emptyList(), 600,
+                RATE_LIMIT_WINDOW);
+        this.sessionScheduler = new RouteScheduler(Collections.emptyList(), Collections.emptyList(), 600,
+                RATE_LIMIT_WINDOW);
+    }
+
+    /**
+     * Find the paid account of this name. If there is already a lookup for this name in progress, this waits for its
+     * result instead of making a new request.
+     *
+     * @param name player name - case-insensitive
+     * @return the premium profile or empty if there is no paid account with this name
+     * @throws RateLimitReachedException if all outgoing addresses reached the rate-limit
+     * @throws CircuitOpenException if the Mojang API is considered unavailable
+     * @throws IOException on connection errors
+     */
+    public Optional<Profile> findProfile(String name) throws IOException {
+        return await(findProfileAsync(name));
+    }
+
+    /**
+     * Find the paid account of this name without blocking the calling thread. If there is already a lookup for this
+     * name in progress, its result is shared instead of making a new request.
+     *
+     * @param name player name - case-insensitive
+     * @return the premium profile or empty if there is no paid account with this name. It fails with the same
+     * exceptions as {@link #findProfile(String)}.
+     */
+    public CompletableFuture<Optional<Profile>> findProfileAsync(String name) {
+        if (!VALID_NAME.matcher(name).matches()) {
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+
+        String key = name.toLowerCase(Locale.ROOT);
+
+        CompletableFuture<Optional<Profile>> lookup = new CompletableFuture<>();
+        CompletableFuture<Optional<Profile>> pending = pendingLookups.putIfAbsent(key, lookup);
+        if (pending != null) {
+            logger.debug("Waiting on the pending Mojang lookup for {}", name);
+            return pending;
+        }
+
+        guardedLookup(name).whenComplete((profile, error) -> {
+            pendingLookups.remove(key, lookup);
+            if (error == null) {
+                lookup.complete(profile);
+            } else {
+                lookup.completeExceptionally(unwrap(error));
+            }
+        });
+
+        return lookup;
+    }
+
+    private CompletableFuture<Optional<Profile>> guardedLookup(String name) {
+        CircuitBreaker breaker = profileBreaker;
+        if (breaker == null) {
+            return lookup(name);
+        }
+
+        if (!breaker.tryAcquire()) {
+            return failedFuture(new CircuitOpenException("Mojang API is considered unavailable"));
+        }
+
+        long start = MonotonicClock.SYSTEM.millis();
+        return lookup(name).whenComplete((profile, error) -> {
+            Throwable cause = unwrap(error);
+            if (error == null) {
+                breaker.onSuccess(MonotonicClock.SYSTEM.millis() - start);
+            } else if (cause instanceof RateLimitReachedException || cause instanceof InterruptedIOException) {
+                // nothing was learned about Mojang
+                breaker.release();
+            } else {
+                breaker.onFailure();
+            }
+        });
+    }
+
+    private CompletableFuture<Optional<Profile>> lookup(String name) {
+        ProfileBatcher batcher = this.batcher;
+        if (batcher == null) {
+            return requestProfile(name);
+        }
+
+        return batcher.findProfile(name);
+    }
+
+    private CompletableFuture<Optional<Profile>> requestProfile(String name) {
+        return requestApi("GET", PROFILE_PATH + name, null).thenApply(response -> {
+            int statusCode = response.getStatusCode();
+            if (statusCode == HttpURLConnection.HTTP_NO_CONTENT || statusCode == HttpURLConnection.HTTP_NOT_FOUND) {
+                return Optional.empty();
+            }
+
+            try {
+                checkResponse(response);
+                return Optional.ofNullable(decoder.readProfile(response));
+            } catch (IOException ioEx) {
+                throw new CompletionException(ioEx);
+            }
+        });
+    }
+
+    /**
+     * Resolve multiple names using the bulk endpoint.
+     *
+     * @param names up to 10 names
+     * @return the found profiles - names without a paid account are missing. It fails on connection errors or if the
+     * rate-limit is reached.
+     */
+    CompletableFuture<List<Profile>> requestProfiles(Collection<String> names) {
+        byte[] body = gson.toJson(names).getBytes(StandardCharsets.UTF_8);
+        return requestApi("POST", BULK_PATH, body).thenApply(response -> {
+            try {
+                checkResponse(response);
+                return decoder.readProfiles(response);
+            } catch (IOException ioEx) {
+                throw new CompletionException(ioEx);
+            }
+        });
+    }
+
+    /**
+     * Find the current name of a paid account. This is meant for background work and only uses spare requests of the
+     * rate-limit without waiting for other lookups.
+     *
+     * @param id premium UUID
+     * @param reserved number of requests per address that should remain for logins
+     * @return the current name or empty if the account doesn't exist anymore
+     * @throws RateLimitReachedException if there are no spare requests
+     * @throws CircuitOpenException if the session server is considered unavailable
+     * @throws IOException on connection errors
+     */
+    public Optional<String> findName(UUID id, int reserved) throws IOException {
+        CircuitBreaker breaker = sessionBreaker;
+        if (breaker != null && breaker.getState() != CircuitBreaker.State.CLOSED) {
+            throw new CircuitOpenException("Session server is considered unavailable");
+        }
+
+        RouteScheduler scheduler = sessionScheduler;
+        Route route = scheduler.acquireSpare(reserved).orElseThrow(() -> new RateLimitReachedException(
+                "No spare requests within the rate-limit"));
+
+        // background work doesn't need a fail over
+        EndpointList.Endpoint endpoint = sessionEndpoints.getPrimary();
+        URI uri = URI.create(endpoint.getUrl() + NAME_PATH + UUIDAdapter.toMojangId(id));
+        HttpResponse response = await(track(endpoint, send("GET", uri, null, LOOKUP_TIMEOUT, route)));
+
+        int statusCode = response.getStatusCode();
+        if (statusCode == RATE_LIMIT_CODE) {
+            scheduler.markRateLimited(route);
+            throw new RateLimitReachedException("Rate-limited by Mojang using " + route);
+        }
+
+        if (statusCode == HttpURLConnection.HTTP_NO_CONTENT || statusCode == HttpURLConnection.HTTP_NOT_FOUND) {
+            return Optional.empty();
+        }
+
+        checkResponse(response);
+        return Optional.ofNullable(decoder.readProfile(response)).map(Profile::getName);
+    }
+
+    private CompletableFuture<HttpResponse> requestApi(String method, String path, byte[] body) {
+        return requestApi(apiEndpoints.getOrdered(), 0, method, path, body);
+    }
+
+    private CompletableFuture<HttpResponse> requestApi(List<EndpointList.Endpoint> endpoints, int index,
+                                                      String method, String path, byte[] body) {
+        EndpointList.Endpoint endpoint = endpoints.get(index);
+        boolean last = index == endpoints.size() - 1;
+
+        long start = MonotonicClock.SYSTEM.millis();
+        return requestLimited(method, URI.create(endpoint.getUrl() + path), body)
+                .<CompletableFuture<HttpResponse>>handle((response, error) -> {
+                    if (error == null) {
+                        if (!isServerError(response)) {
+                            endpoint.onSuccess(MonotonicClock.SYSTEM.millis() - start);
+                            return CompletableFuture.completedFuture(response);
+                        }
+
+                        endpoint.onFailure();
+                        if (last) {
+                            return CompletableFuture.completedFuture(response);
+                        }
+
+                        logger.debug("Mojang API {} responded with {}. Failing over", endpoint, response);
+                    } else {
+                        Throwable cause = unwrap(error);
+                        if (!(cause instanceof IOException) || cause instanceof RateLimitReachedException
+                                || cause instanceof InterruptedIOException) {
+                            // nothing was learned about the endpoint
+                            return failedFuture(cause);
+                        }
+
+                        endpoint.onFailure();
+                        if (last) {
+                            return failedFuture(cause);
+                        }
+
+                        logger.debug("Mojang API {} failed. Failing over", endpoint, cause);
+                    }
+
+                    return requestApi(endpoints, index + 1, method, path, body);
+                }).thenCompose(Function.identity());
+    }
+
+    private CompletableFuture<HttpResponse> requestLimited(String method, URI uri, byte[] body) {
+        Optional<Route> acquired = routeScheduler.acquire();
+        if (!acquired.isPresent()) {
+            return failedFuture(new RateLimitReachedException(
+                    "All outgoing addresses and proxies reached the rate-limit"));
+        }
+
+        Route route = acquired.get();
+
+        // continue on our executor, because acquiring the next route could block
+        return send(method, uri, body, LOOKUP_TIMEOUT, route).thenComposeAsync(response -> {
+            if (response.getStatusCode() != RATE_LIMIT_CODE) {
+                return CompletableFuture.completedFuture(response);
+            }
+
+            // try the next one
+            logger.debug("Rate-limited by Mojang using {}", route);
+            routeScheduler.markRateLimited(route);
+            return requestLimited(method, uri, body);
+        }, executor);
+    }
+
+    private static void checkResponse(HttpResponse response) throws IOException {
+        if (response.getStatusCode() != HttpURLConnection.HTTP_OK) {
+            throw new IOException("Unexpected Mojang response " + response);
+        }
+    }
+
+    /**
+     * Verify that the player joined using the session server. This doesn't block the calling thread.
+     *
+     * @param username requested username
+     * @param serverHash hash of the server id, shared secret and public key
+     * @param hostIp address of the player or null to skip the address check
+     * @return the verified profile including the skin or empty if the session is invalid. The future is completed on
+     * the I/O thread. It fails with {@link CircuitOpenException} if the session server is considered unavailable.
+     * Cancelling it also cancels the request if it's still queued.
+     */
+    public CompletableFuture<Optional<Verification>> hasJoined(String username, String serverHash,
+                                                               InetAddress hostIp) {
+        CircuitBreaker breaker = sessionBreaker;
+        if (breaker != null && !breaker.tryAcquire()) {
+            return failedFuture(new CircuitOpenException("Session server is considered unavailable"));
+        }
+
+        String path;
+        try {
+            String query = "?username=" + URLEncoder.encode(username, "UTF-8") + "&serverId=" + serverHash;
+            if (hostIp != null) {
+                query += "&ip=" + URLEncoder.encode(hostIp.getHostAddress(), "UTF-8");
+            }
+
+            path = HAS_JOINED_PATH + query;
+        } catch (UnsupportedEncodingException encodingEx) {
+            if (breaker != null) {
+                breaker.release();
+            }
+
+            return failedFuture(encodingEx);
+        }
+
+        long start = MonotonicClock.SYSTEM.millis();
+        CompletableFuture<HttpResponse> request = requestSession(sessionEndpoints.getOrdered(), 0, path);
+        CompletableFuture<Optional<Verification>> verification = request.thenApply(this::parseVerification);
+        if (breaker != null) {
+            verification = verification.whenComplete((result, error) -> {
+                if (error == null) {
+                    breaker.onSuccess(MonotonicClock.SYSTEM.millis() - start);
+                } else if (request.isCancelled()) {
+                    // nothing was learned about the session server
+                    breaker.release();
+                } else {
+                    breaker.onFailure();
+                }
+            });
+        }
+
+        return cancelWith(verification, request);
+    }
+
+    /**
+     * Forward the cancellation of a dependent future to its source, which isn't done by {@link CompletableFuture}
+     * itself.
+     */
+    private static <T> CompletableFuture<T> cancelWith(CompletableFuture<T> dependent, CompletableFuture<?> source) {
+        dependent.whenComplete((result, error) -> {
+            if (dependent.isCancelled()) {
+                source.cancel(false);
+            }
+        });
+
+        return dependent;
+    }
+
+    private CompletableFuture<HttpResponse> requestSession(List<EndpointList.Endpoint> endpoints, int index,
+                                                           String path) {
+        EndpointList.Endpoint endpoint = endpoints.get(index);
+        EndpointList.Endpoint next = index + 1 < endpoints.size() ? endpoints.get(index + 1) : null;
+        CompletableFuture<HttpResponse> request = sendSessionRequest(endpoint, next, path);
+        CompletableFuture<HttpResponse> result = request.<CompletableFuture<HttpResponse>>handle((response, error) -> {
+            if (next == null || request.isCancelled() || (error == null && !isServerError(response))) {
+                return error == null ? CompletableFuture.completedFuture(response) : failedFuture(error);
+            }
+
+            logger.debug("Session server {} failed. Failing over to {}", endpoint, next, error);
+            return requestSession(endpoints, index + 1, path);
+        }).thenCompose(Function.identity());
+        return cancelWith(result, request);
+    }
+
+    private CompletableFuture<HttpResponse> sendSessionRequest(EndpointList.Endpoint endpoint,
+                                                               EndpointList.Endpoint next, String path) {
+        URI uri = URI.create(endpoint.getUrl() + path);
+
+        // logins cannot wait for the rate-limit, but they use it up for the background lookups of the session server
+        RouteScheduler scheduler = sessionScheduler;
+        RequestHedger hedger = this.hedger;
+        if (hedger == null) {
+            return track(endpoint, send("GET", uri, null, SESSION_TIMEOUT, scheduler.charge()));
+        }
+
+        return hedger.send(() -> track(endpoint, send("GET", uri, null, SESSION_TIMEOUT, scheduler.charge())), () -> {
+            if (next != null) {
+                // a different server is more likely to answer fast than a different connection
+                logger.debug("Hedging session request using {}", next);
+                URI nextUri = URI.create(next.getUrl() + path);
+                return track(next, send("GET", nextUri, null, SESSION_TIMEOUT, scheduler.charge()));
+            }
+
+            Route route = nextHedgeRoute();
+            logger.debug("Hedging session request using {}", route);
+            scheduler.charge(route);
+            return track(endpoint, send("GET", uri, null, SESSION_TIMEOUT, route));
+        });
+    }
+
+    private static CompletableFuture<HttpResponse> track(EndpointList.Endpoint endpoint,
+                                                         CompletableFuture<HttpResponse> response) {
+        long start = MonotonicClock.SYSTEM.millis();
+        return cancelWith(response.whenComplete((result, error) -> {
+            if (error == null && !isServerError(result)) {
+                endpoint.onSuccess(MonotonicClock.SYSTEM.millis() - start);
+            } else if (!response.isCancelled()) {
+                endpoint.onFailure();
+            }
+        }), response);
+    }
+
+    private static boolean isServerError(HttpResponse response) {
+        return response.getStatusCode() >= HttpURLConnection.HTTP_INTERNAL_ERROR;
+    }
+
+    private CompletableFuture<HttpResponse> send(String method, URI uri, byte[] body, long timeout, Route route) {
+        CompletableFuture<HttpResponse> response = httpClient.send(method, uri, body, timeout, route);
+        if (!route.isProxy()) {
+            return response;
+        }
+
+        ProxyHealth health = routeScheduler.getProxyHealth();
+        long start = MonotonicClock.SYSTEM.millis();
+        return cancelWith(response.whenComplete((result, error) -> {
+            if (error == null) {
+                health.onSuccess(route, MonotonicClock.SYSTEM.millis() - start);
+            } else if (!response.isCancelled()) {
+                health.onFailure(route);
+            }
+        }), response);
+    }
+
+    private void probeProxies(ProxyHealth health) {
+        // any response proves that the proxy works - this doesn't count against the rate-limit of name lookups
+        URI probeUri = URI.create(apiEndpoints.getPrimary().getUrl() + '/');
+        for (Route proxy : health.getProxies()) {
+            long start = MonotonicClock.SYSTEM.millis();
+            httpClient.send("GET", probeUri, null, LOOKUP_TIMEOUT, proxy).whenComplete((response, error) -> {
+                if (error == null) {
+                    health.onProbeSuccess(proxy, MonotonicClock.SYSTEM.millis() - start);
+                } else {
+                    logger.debug("Health probe of {} failed", proxy, error);
+                    health.onFailure(proxy);
+                }
+            });
+        }
+    }
+
+    private Route nextHedgeRoute() {
+        // rotate through the other routes or use a new connection if there is none
+        List<Route> routes = routeScheduler.getRoutes();
+        routes.remove(Route.DIRECT);
+        if (routes.isEmpty()) {
+            return Route.DIRECT;
+        }
+
+        return routes.get(Math.floorMod(hedgeRoute.getAndIncrement(), routes.size()));
+    }
+
+    private static <R> CompletableFuture<R> failedFuture(Throwable error) {
+        CompletableFuture<R> failed = new CompletableFuture<>();
+        failed.completeExceptionally(error);
+        return failed;
+    }
+
+    private Optional<Verification> parseVerification(HttpResponse response) {
+        int statusCode = response.getStatusCode();
+        if (statusCode == HttpURLConnection.HTTP_NO_CONTENT) {
+            return Optional.empty();
+        }
+
+        if (statusCode != HttpURLConnection.HTTP_OK) {
+            throw new CompletionException(new IOException("Unexpected session server response " + response));
+        }
+
+        try {
+            return Optional.of(decoder.readVerification(response));
+        } catch (IOException ioEx) {
+            throw new CompletionException(ioEx);
+        }
+    }
+
+    /**
+     * Send all requests to different servers like a local stand-in of the Mojang API for testing.
+     *
+     * @param apiUrl base URL of the name lookups without a trailing slash
+     * @param sessionUrl base URL of the session server without a trailing slash
+     */
+    public void setBaseUrls(String apiUrl, String sessionUrl) {
+        setEndpoints(Collections.singletonList(apiUrl), Collections.singletonList(sessionUrl));
+    }
+
+    /**
+     * Use multiple Yggdrasil compatible servers. Requests fail over to the next one if a server is unavailable.
+     *
+     * @param apiUrls base URLs of the name lookups ordered by preference
+     * @param sessionUrls base URLs of the session server ordered by preference
+     */
+    public void setEndpoints(List<String> apiUrls, List<String> sessionUrls) {
+        this.apiEndpoints = new EndpointList(apiUrls);
+        this.sessionEndpoints = new EndpointList(sessionUrls);
+    }
+
+    public EndpointList getApiEndpoints() {
+        return apiEndpoints;
+    }
+
+    public EndpointList getSessionEndpoints() {
+        return sessionEndpoints;
+    }
+
+    /**
+     * Configure the outgoing routes for name lookups. Lookups of the session server use a separate budget on the
+     * same addresses.
+     *
+     * @param addresses local addresses or empty for the default one
+     * @param proxies HTTP proxies - only used if all addresses are rate-limited
+     * @param maxRequests maximum number of requests per address or proxy within 10 minutes
+     */
+    public synchronized void setRoutes(Collection<InetAddress> addresses, Collection<Proxy> proxies, int maxRequests) {
+        routeScheduler = new RouteScheduler(addresses, proxies, maxRequests, RATE_LIMIT_WINDOW);
+        routeScheduler.setClusterQuota(clusterQuota);
+        // only background work uses it, which doesn't need proxies
+        sessionScheduler = new RouteScheduler(addresses, Collections.emptyList(), maxRequests, RATE_LIMIT_WINDOW);
+
+        if (probeTask != null) {
+            probeTask.cancel();
+            probeTask = null;
+        }
+
+        ProxyHealth health = routeScheduler.getProxyHealth();
+        if (!health.getProxies().isEmpty()) {
+            probeTask = timer.scheduleAtFixedRate(() -> probeProxies(health),
+                    0, PROBE_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Share the rate-limit of the direct routes with the other servers of the network.
+     *
+     * @param clusterQuota quota leased from the shared database or null to disable it
+     */
+    public synchronized void setClusterQuota(ClusterQuota clusterQuota) {
+        this.clusterQuota = clusterQuota;
+        routeScheduler.setClusterQuota(clusterQuota);
+    }
+
+    /**
+     * Let rate-limited lookups wait until the rate-limit frees up again.
+     *
+     * @param maxWait maximum time in milliseconds to wait or 0 to disable it
+     * @param executor executor for the retried lookups
+     */
+    public synchronized void setRetryQueue(long maxWait, Executor executor) {
+        if (maxWait > 0) {
+            retryQueue = new DeferredLookupQueue(this, timer, executor, maxWait);
+        } else {
+            retryQueue = null;
+        }
+    }
+
+    /**
+     * @return queue for rate-limited lookups or null if they should fail immediately
+     */
+    public DeferredLookupQueue getRetryQueue() {
+        return retryQueue;
+    }
+
+    int getAvailableRequests() {
+        return routeScheduler.getAvailable();
+    }
+
+    long getRetryDelay() {
+        return routeScheduler.getRetryDelay();
+    }
+
+    /**
+     * @return health of the configured proxies
+     */
+    public ProxyHealth getProxyHealth() {
+        return routeScheduler.getProxyHealth();
+    }
+
+    /**
+     * Collect lookups within the given window and resolve them together using the bulk endpoint.
+     *
+     * @param window time in milliseconds or 0 to disable it
+     */
+    public void setBatchWindow(long window) {
+        if (window > 0) {
+            batcher = new ProfileBatcher(this, timer, window);
+        } else {
+            batcher = null;
+        }
+    }
+
+    /**
+     * Guard the name lookups and session verifications with separate circuit breakers.
+     *
+     * @param windowSize number of recent calls to evaluate
+     * @param failureRate percentage of failed or slow calls to open the breaker
+     * @param slowCallThreshold time in milliseconds after which a call is counted as failed
+     * @param openDuration time in milliseconds to fail fast before probing again
+     */
+    public void setCircuitBreaker(int windowSize, int failureRate, long slowCallThreshold, long openDuration) {
+        profileBreaker = new CircuitBreaker(windowSize, failureRate, slowCallThreshold, openDuration);
+        sessionBreaker = new CircuitBreaker(windowSize, failureRate, slowCallThreshold, openDuration);
+    }
+
+    /**
+     * Send a second session request using another outgoing address or proxy if the first one is slower than the given
+     * percentile of the recent requests.
+     *
+     * @param percentile percentile of the recent latencies
+     * @param maxRatio maximum percentage of hedged requests
+     */
+    public synchronized void setHedging(int percentile, int maxRatio) {
+        hedger = new RequestHedger(timer, percentile, maxRatio);
+    }
+
+    /**
+     * @param executor runs the continuations of non-blocking lookups like parsing and retries, DNS lookups and TLS
+     *                 handshake tasks
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+        httpClient.setExecutor(executor);
+    }
+
+    Executor getExecutor() {
+        return executor;
+    }
+
+    static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    static <R> R await(CompletableFuture<R> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException interruptedEx) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the Mojang response");
+        } catch (ExecutionException executionEx) {
+            Throwable cause = executionEx.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * @return client for all of our Mojang requests including connection reuse metrics
+     */
+    public AsyncHttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    public synchronized void close() {
+        if (probeTask != null) {
+            probeTask.cancel();
+        }
+
+        httpClient.close();
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2021 <Your name and contributors>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.mojang;
+
+import com.github.games647.fastlogin.core.MonotonicClock;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Remembers usernames that don't belong to a paid account, so we don't have to ask Mojang again for every reconnect.
+ * Only a 64-bit hash of the lowercase name is stored. A false positive needs a hash collision with another unknown
+ * name and would only lead to a cracked session until the entry expires.
+ *
+ * Entries are kept in two generations with the half of the capacity and expire time each. Once the current
+ * generation is full or older than the half of the expire time, it replaces the previous one. Therefore an entry
+ * lives at least the half of the expire time and at most the complete expire time without any per entry bookkeeping.
+ */
+public class NegativeProfileCache {
+
+    // 0 marks a free slot
+    private static final long EMPTY = 0;
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    private final MonotonicClock clock;
+    private final long generationTime;
+    private final int generationSize;
+
+    private long[] current;
+    private long[] previous;
+
+    private int currentSize;
+    private long currentStart;
+
+    /**
+     * @param expireTime maximum time in milliseconds an entry is remembered
+     * @param maxSize maximum number of remembered names
+     */
+    public NegativeProfileCache(long expireTime, int maxSize) {
+        this(expireTime, maxSize, MonotonicClock.SYSTEM);
+    }
+
+    /**
+     * @param clock source of the time
+     */
+    NegativeProfileCache(long expireTime, int maxSize, MonotonicClock clock) {
+        this.clock = clock;
+        this.generationTime = expireTime / 2;
+        this.generationSize = Math.max(maxSize / 2, 1);
+
+        // keep the load factor at 0.5 at maximum for short probe sequences
+        int capacity = Integer.highestOneBit(generationSize * 2 - 1) << 1;
+        this.current = new long[capacity];
+        this.previous = new long[capacity];
+        this.currentStart = clock.millis();
+    }
+
+    /**
+     * Remember that this name isn't associated with a paid account.
+     *
+     * @param username player name - case-insensitive
+     */
+    public void add(String username) {
+        long hash = hash(username);
+        synchronized (this) {
+            rotateIfExpired(clock.millis());
+            if (contains(current, hash)) {
+                return;
+            }
+
+            if (currentSize >= generationSize) {
+                rotate(clock.millis());
+            }
+
+            insert(current, hash);
+            currentSize++;
+        }
+    }
+
+    /**
+     * @param username player name - case-insensitive
+     * @return true if the name was looked up recently without a result
+     */
+    public boolean contains(String username) {
+        long hash = hash(username);
+        synchronized (this) {
+            rotateIfExpired(clock.millis());
+            return contains(current, hash) || contains(previous, hash);
+        }
+    }
+
+    /**
+     * Forget this name for example if it was claimed by a paid account in the meanwhile.
+     *
+     * @param username player name - case-insensitive
+     */
+    public void remove(String username) {
+        long hash = hash(username);
+        synchronized (this) {
+            if (remove(current, hash)) {
+                currentSize--;
+            }
+
+            remove(previous, hash);
+        }
+    }
+
+    private void rotateIfExpired(long now) {
+        if (now - currentStart >= generationTime) {
+            if (now - currentStart >= generationTime * 2) {
+                // both generations are expired
+                Arrays.fill(current, EMPTY);
+                currentSize = 0;
+            }
+
+            rotate(now);
+        }
+    }
+
+    private void rotate(long now) {
+        // re-use the array of the oldest generation to prevent allocations
+        long[] oldest = previous;
+        Arrays.fill(oldest, EMPTY);
+
+        previous = current;
+        current = oldest;
+        currentSize = 0;
+        currentStart = now;
+    }
+
+    private static boolean contains(long[] table, long hash) {
+        int mask = table.length - 1;
+        for (int index = (int) hash & mask; table[index] != EMPTY; index = (index + 1) & mask) {
+            if (table[index] == hash) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static void insert(long[] table, long hash) {
+        int mask = table.length - 1;
+        int index = (int) hash & mask;
+        while (table[index] != EMPTY) {
+            index = (index + 1) & mask;
+        }
+
+        table[index] = hash;
+    }
+
+    private static boolean remove(long[] table, long hash) {
+        int mask = table.length - 1;
+        int index = (int) hash & mask;
+        while (table[index] != hash) {
+            if (table[index] == EMPTY) {
+                return false;
+            }
+
+            index = (index + 1) & mask;
+        }
+
+        // re-insert the following entries of this cluster, because they could be unreachable otherwise
+        table[index] = EMPTY;
+        for (index = (index + 1) & mask; table[index] != EMPTY; index = (index + 1) & mask) {
+            long moved = table[index];
+            table[index] = EMPTY;
+            insert(table, moved);
+        }
+
+        return true;
+    }
+
+    private static long hash(String username) {
+        long hash = HASH_FUNCTION.hashString(username.toLowerCase(Locale.ROOT), StandardCharsets.UTF_8).asLong();
+        return hash == EMPTY ? 1 : hash;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2021 <Your name and contributors>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.mojang;
+
+import com.github.games647.craftapi.model.Profile;
+import com.github.games647.fastlogin.core.HashedWheelTimer;
+import com.github.games647.fastlogin.core.HashedWheelTimer.Timeout;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Collects name lookups within a short time window and resolves up to {@link #MAX_BATCH_SIZE} names using a single
+ * request against the bulk endpoint of Mojang. This multiplies the number of names we can resolve within the
+ * rate-limit.
+ *
+ * A batch is resolved by the caller that fills it or by the timer after the window expired. Therefore nobody waits
+ * on a thread for other names.
+ */
+class ProfileBatcher {
+
+    // https://wiki.vg/Mojang_API#Playernames_-.3E_UUIDs
+    static final int MAX_BATCH_SIZE = 10;
+
+    private final MojangApiConnector connector;
+    private final HashedWheelTimer timer;
+    private final long window;
+
+    private Batch openBatch;
+
+    /**
+     * @param connector connector making the bulk requests
+     * @param timer timer to resolve batches after the window
+     * @param window time in milliseconds to wait for other names
+     */
+    ProfileBatcher(MojangApiConnector connector, HashedWheelTimer timer, long window) {
+        this.connector = connector;
+        this.timer = timer;
+        this.window = window;
+    }
+
+    CompletableFuture<Optional<Profile>> findProfile(String name) {
+        Batch batch;
+        boolean leader = false;
+        boolean full = false;
+        CompletableFuture<Optional<Profile>> lookup;
+        synchronized (this) {
+            if (openBatch == null) {
+                openBatch = new Batch();
+                leader = true;
+            }
+
+            batch = openBatch;
+            lookup = batch.add(name);
+            if (batch.size() >= MAX_BATCH_SIZE) {
+                // no further names can be added to this batch
+                openBatch = null;
+                full = true;
+            }
+        }
+
+        if (full) {
+            resolve(batch);
+        } else if (leader) {
+            batch.windowTask = timer.schedule(() -> connector.getExecutor().execute(() -> {
+                synchronized (this) {
+                    if (openBatch == batch) {
+                        openBatch = null;
+                    }
+                }
+
+                resolve(batch);
+            }), window, TimeUnit.MILLISECONDS);
+        }
+
+        return lookup;
+    }
+
+    private void resolve(Batch batch) {
+        if (!batch.resolved.compareAndSet(false, true)) {
+            return;
+        }
+
+        Timeout windowTask = batch.windowTask;
+        if (windowTask != null) {
+            windowTask.cancel();
+        }
+
+        connector.requestProfiles(batch.lookups.keySet()).whenComplete((profiles, error) -> {
+            if (error != null) {
+                Throwable cause = MojangApiConnector.unwrap(error);
+                batch.lookups.values().forEach(lookup -> lookup.completeExceptionally(cause));
+                return;
+            }
+
+            Map<String, Profile> found = new HashMap<>();
+            for (Profile profile : profiles) {
+                found.put(profile.getName().toLowerCase(Locale.ROOT), profile);
+            }
+
+            batch.lookups.forEach((name, lookup) -> lookup.complete(Optional.ofNullable(found.get(name))));
+        });
+    }
+
+    private static class Batch {
+
+        // lowercase name -> lookup
+        private final Map<String, CompletableFuture<Optional<Profile>>> lookups = new LinkedHashMap<>();
+        private final AtomicBoolean resolved = new AtomicBoolean();
+
+        private volatile Timeout windowTask;
+
+        public CompletableFuture<Optional<Profile>> add(String name) {
+            return lookups.computeIfAbsent(name.toLowerCase(Locale.ROOT), key -> new CompletableFuture<>());
+        }
+
+        public int size() {
+            return lookups.size();
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2021 <Your name and contributors>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.mojang;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Tracks the latency and failures of our proxies using real requests and background probes. Proxies are chosen
+ * weighted by their latency, so fast proxies get more traffic. Proxies failing multiple times in a row are evicted
+ * until a probe succeeds again.
+ */
+public class ProxyHealth {
+
+    private static final int MAX_FAILURES = 3;
+
+    // weight of a new sample in the moving average
+    private static final double SMOOTHING = 0.3;
+    private static final double DEFAULT_LATENCY = 200;
+
+    private final Map<Route, Stats> proxies = new LinkedHashMap<>();
+
+    public ProxyHealth(Collection<Route> proxies) {
+        for (Route proxy : proxies) {
+            this.proxies.put(proxy, new Stats());
+        }
+    }
+
+    public Collection<Route> getProxies() {
+        return Collections.unmodifiableSet(proxies.keySet());
+    }
+
+    /**
+     * @param proxy proxy route
+     * @param latency time in milliseconds of the request
+     */
+    public void onSuccess(Route proxy, long latency) {
+        Stats stats = proxies.get(proxy);
+        if (stats != null) {
+            stats.onSuccess(latency, false);
+        }
+    }
+
+    /**
+     * A background probe succeeded. This also brings evicted proxies back.
+     *
+     * @param proxy proxy route
+     * @param latency time in milliseconds of the request
+     */
+    public void onProbeSuccess(Route proxy, long latency) {
+        Stats stats = proxies.get(proxy);
+        if (stats != null) {
+            stats.onSuccess(latency, true);
+        }
+    }
+
+    public void onFailure(Route proxy) {
+        Stats stats = proxies.get(proxy);
+        if (stats != null) {
+            stats.onFailure();
+        }
+    }
+
+    public boolean isAvailable(Route proxy) {
+        Stats stats = proxies.get(proxy);
+        return stats != null && stats.isAvailable();
+    }
+
+    /**
+     * Choose one of the available proxies randomly weighted by the inverse of their latency.
+     *
+     * @param candidates proxies to choose from
+     * @return the chosen proxy or empty if none of them is available
+     */
+    public Optional<Route> choose(Collection<Route> candidates) {
+        List<Route> available = new ArrayList<>(candidates.size());
+        double[] weights = new double[candidates.size()];
+        double totalWeight = 0;
+        for (Route candidate : candidates) {
+            Stats stats = proxies.get(candidate);
+            if (stats != null && stats.isAvailable()) {
+                totalWeight += 1 / Math.max(stats.getLatency(), 1);
+                weights[available.size()] = totalWeight;
+                available.add(candidate);
+            }
+        }
+
+        if (available.isEmpty()) {
+            return Optional.empty();
+        }
+
+        double target = ThreadLocalRandom.current().nextDouble(totalWeight);
+        for (int i = 0; i < available.size(); i++) {
+            if (target < weights[i]) {
+                return Optional.of(available.get(i));
+            }
+        }
+
+        return Optional.of(available.get(available.size() - 1));
+    }
+
+    private static class Stats {
+
+        // moving average in milliseconds or negative if unknown
+        private double latency = -1;
+        private int failures;
+        private boolean evicted;
+
+        public synchronized void onSuccess(long sample, boolean probe) {
+            if (latency < 0) {
+                latency = sample;
+            } else {
+                latency += SMOOTHING * (sample - latency);
+            }
+
+            failures = 0;
+            if (probe) {
+                evicted = false;
+            }
+        }
+
+        public synchronized void onFailure() {
+            failures++;
+            if (failures >= MAX_FAILURES) {
+                evicted = true;
+            }
+        }
+
+        public synchronized boolean isAvailable() {
+            return !evicted;
+        }
+
+        public synchronized double getLatency() {
+            // prefer untested proxies over slow ones, but not over fast ones
+            return latency < 0 ? DEFAULT_LATENCY : latency;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2021 <Your name and contributors>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.mojang;
+
+/**
+ * Sliding window of requests. Unlike {@link com.github.games647.fastlogin.core.RateLimiter} this also tells how many
+ * requests are still available, so we can choose between multiple budgets.
+ */
+class RequestBudget {
+
+    private final long[] requests;
+    private final long window;
+
+    // index of the oldest request
+    private int head;
+    private int count;
+
+    /**
+     * @param maxRequests maximum number of requests within the window
+     * @param window time in milliseconds
+     */
+    RequestBudget(int maxRequests, long window) {
+        this.requests = new long[Math.max(maxRequests, 0)];
+        this.window = window;
+    }
+
+    synchronized int remaining(long now) {
+        expire(now);
+        return requests.length - count;
+    }
+
+    synchronized boolean tryAcquire(long now) {
+        expire(now);
+        if (count >= requests.length) {
+            return false;
+        }
+
+        requests[(head + count) % requests.length] = now;
+        count++;
+        return true;
+    }
+
+    /**
+     * Count a request that is sent regardless of the remaining requests. If the budget is exhausted, only the newest
+     * requests are kept, because they decide when requests are available again.
+     *
+     * @param now current time in milliseconds
+     */
+    synchronized void record(long now) {
+        expire(now);
+        if (requests.length == 0) {
+            return;
+        }
+
+        if (count == requests.length) {
+            head = (head + 1) % requests.length;
+            count--;
+        }
+
+        requests[(head + count) % requests.length] = now;
+        count++;
+    }
+
+    /**
+     * @param now current time in milliseconds
+     * @return time in milliseconds until the next request is available or 0 if there are requests left
+     */
+    synchronized long nextRelease(long now) {
+        expire(now);
+        if (count < requests.length) {
+            return 0;
+        }
+
+        if (count == 0) {
+            // no requests allowed at all
+            return window;
+        }
+
+        return requests[head] + window - now;
+    }
+
+    /**
+     * Mark all remaining requests as used, because Mojang rate-limited us. Requests made before will still expire as
+     * usual, so we probe the limit again after the oldest of them.
+     *
+     * @param now current time in milliseconds
+     */
+    synchronized void exhaust(long now) {
+        expire(now);
+        while (count < requests.length) {
+            requests[(head + count) % requests.length] = now;
+            count++;
+        }
+    }
+
+    private void expire(long now) {
+        long toBeExpired = now - window;
+        while (count > 0 && requests[head] <= toBeExpired) {
+            head = (head + 1) % requests.length;
+            count--;
+        }
+    }
+}
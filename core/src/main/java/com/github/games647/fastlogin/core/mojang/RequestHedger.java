@@ -0,0 +1,170 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2021 <Your name and contributors>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.mojang;
+
+import com.github.games647.fastlogin.core.HashedWheelTimer;
+import com.github.games647.fastlogin.core.HashedWheelTimer.Timeout;
+import com.github.games647.fastlogin.core.MonotonicClock;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Sends a second identical request if the first one didn't respond within a percentile of the recent latencies. The
+ * first successful response wins. This cuts the tail latency, because slow responses are often caused by a single slow
+ * connection or server instance.
+ *
+ * The number of hedged requests is limited to a ratio of all requests, so hedging cannot double the load during
+ * outages.
+ */
+class RequestHedger {
+
+    // don't hedge before we know the usual latency
+    private static final int MIN_SAMPLES = 20;
+    private static final long MIN_DELAY = 10;
+
+    // maximum number of saved up hedges
+    private static final double MAX_BURST = 10;
+
+    private final HashedWheelTimer timer;
+    private final int percentile;
+    private final double maxRatio;
+
+    // latencies of the recent successful requests in milliseconds
+    private final long[] latencies = new long[100];
+    private int position;
+    private int samples;
+
+    private double hedgeBudget;
+
+    /**
+     * @param timer timer to send the hedged requests
+     * @param percentile percentile of the recent latencies after which a request is hedged
+     * @param maxRatio maximum percentage of hedged requests
+     */
+    RequestHedger(HashedWheelTimer timer, int percentile, int maxRatio) {
+        this.timer = timer;
+        this.percentile = percentile;
+        this.maxRatio = maxRatio / 100.0;
+    }
+
+    <T> CompletableFuture<T> send(Supplier<CompletableFuture<T>> primary, Supplier<CompletableFuture<T>> hedge) {
+        long start = MonotonicClock.SYSTEM.millis();
+        long delay = nextDelay();
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(1);
+        AtomicBoolean answered = new AtomicBoolean();
+        BiConsumer<T, Throwable> onResponse = (response, error) -> {
+            if (error == null) {
+                if (answered.compareAndSet(false, true)) {
+                    // record it before the caller could send the next request
+                    recordLatency(MonotonicClock.SYSTEM.millis() - start);
+                    result.complete(response);
+                }
+            } else if (pending.decrementAndGet() == 0) {
+                // all requests failed
+                result.completeExceptionally(error);
+            }
+        };
+
+        CompletableFuture<T> primaryRequest = primary.get();
+        primaryRequest.whenComplete(onResponse);
+        if (delay < 0) {
+            result.whenComplete((response, error) -> primaryRequest.cancel(false));
+            return result;
+        }
+
+        AtomicReference<CompletableFuture<T>> hedgeRequest = new AtomicReference<>();
+        Timeout hedgeTask = timer.schedule(() -> {
+            if (result.isDone() || !tryAcquireHedge()) {
+                return;
+            }
+
+            // skip it if the request already failed in the meanwhile
+            if (pending.getAndUpdate(count -> count == 0 ? 0 : count + 1) != 0) {
+                CompletableFuture<T> request = hedge.get();
+                hedgeRequest.set(request);
+                request.whenComplete(onResponse);
+                if (result.isDone()) {
+                    // completed while the hedge was sent
+                    request.cancel(false);
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+
+        result.whenComplete((response, error) -> {
+            // the loser is still outstanding - or both if the caller cancelled
+            hedgeTask.cancel();
+            primaryRequest.cancel(false);
+            CompletableFuture<T> request = hedgeRequest.get();
+            if (request != null) {
+                request.cancel(false);
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * @return delay in milliseconds after which the request should be hedged or -1 if we don't know enough latencies
+     */
+    private synchronized long nextDelay() {
+        hedgeBudget = Math.min(hedgeBudget + maxRatio, MAX_BURST);
+        if (samples < MIN_SAMPLES) {
+            return -1;
+        }
+
+        long[] sorted = Arrays.copyOf(latencies, samples);
+        Arrays.sort(sorted);
+
+        int index = (int) Math.ceil(percentile / 100.0 * samples) - 1;
+        return Math.max(sorted[Math.max(index, 0)], MIN_DELAY);
+    }
+
+    private synchronized boolean tryAcquireHedge() {
+        if (hedgeBudget < 1) {
+            return false;
+        }
+
+        hedgeBudget--;
+        return true;
+    }
+
+    private synchronized void recordLatency(long latency) {
+        latencies[position] = latency;
+        position = (position + 1) % latencies.length;
+        if (samples < latencies.length) {
+            samples++;
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2021 <Your name and contributors>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.mojang;
+
+import com.github.games647.craftapi.model.Profile;
+import com.github.games647.craftapi.model.auth.Verification;
+import com.github.games647.craftapi.model.skin.SkinProperty;
+import com.github.games647.craftapi.model.skin.Textures;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Streaming decoder of Mojang responses. Unlike binding the models using reflection, this reads the values directly
+ * from the response bytes and skips unused fields like profile actions or other properties without building any
+ * intermediate objects.
+ */
+class ResponseDecoder {
+
+    private final TypeAdapter<UUID> uuidAdapter = new UUIDTypeAdapter();
+
+    /**
+     * @param response response of the name or UUID lookup
+     * @return the profile or null if the body is empty
+     * @throws IOException on malformed responses
+     */
+    Profile readProfile(HttpResponse response) throws IOException {
+        if (response.getBodyLength() == 0) {
+            return null;
+        }
+
+        try (JsonReader reader = new JsonReader(response.getBodyReader())) {
+            return readProfile(reader);
+        }
+    }
+
+    /**
+     * @param response response of the bulk lookup
+     * @return the found profiles
+     * @throws IOException on malformed responses
+     */
+    List<Profile> readProfiles(HttpResponse response) throws IOException {
+        try (JsonReader reader = new JsonReader(response.getBodyReader())) {
+            List<Profile> profiles = new ArrayList<>();
+            reader.beginArray();
+            while (reader.hasNext()) {
+                profiles.add(readProfile(reader));
+            }
+
+            reader.endArray();
+            return profiles;
+        }
+    }
+
+    /**
+     * @param response session server response with a body
+     * @return the verified profile with only the textures property
+     * @throws IOException on malformed responses
+     */
+    Verification readVerification(HttpResponse response) throws IOException {
+        try (JsonReader reader = new JsonReader(response.getBodyReader())) {
+            UUID id = null;
+            String name = null;
+            SkinProperty textures = null;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "id":
+                        id = uuidAdapter.read(reader);
+                        break;
+                    case "name":
+                        name = reader.nextString();
+                        break;
+                    case "properties":
+                        textures = readTextures(reader);
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+
+            reader.endObject();
+            if (textures == null) {
+                return new Verification(id, name);
+            }
+
+            return new Verification(id, name, textures);
+        }
+    }
+
+    /**
+     * Find the timestamp inside the base64 decoded value of a textures property.
+     *
+     * @param json decoded value
+     * @return the timestamp or -1 if not present
+     * @throws IOException on malformed values
+     */
+    static long readTimestamp(Reader json) throws IOException {
+        try (JsonReader reader = new JsonReader(json)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("timestamp".equals(reader.nextName())) {
+                    return reader.nextLong();
+                }
+
+                // skips the large textures object without reading it
+                reader.skipValue();
+            }
+        }
+
+        return -1;
+    }
+
+    private Profile readProfile(JsonReader reader) throws IOException {
+        UUID id = null;
+        String name = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String field = reader.nextName();
+            if ("id".equals(field)) {
+                id = uuidAdapter.read(reader);
+            } else if ("name".equals(field)) {
+                name = reader.nextString();
+            } else {
+                // legacy or demo flags
+                reader.skipValue();
+            }
+        }
+
+        reader.endObject();
+        return new Profile(id, name);
+    }
+
+    private SkinProperty readTextures(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+
+        SkinProperty textures = null;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String name = null;
+            String value = null;
+            String signature = null;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String field = reader.nextName();
+                if ("name".equals(field)) {
+                    name = reader.nextString();
+                } else if ("value".equals(field)) {
+                    value = reader.nextString();
+                } else if ("signature".equals(field)) {
+                    signature = reader.nextString();
+                } else {
+                    reader.skipValue();
+                }
+            }
+
+            reader.endObject();
+            if (textures == null && Textures.KEY.equals(name) && value != null) {
+                textures = new SkinProperty(value, signature);
+            }
+        }
+
+        reader.endArray();
+        return textures;
+    }
+}
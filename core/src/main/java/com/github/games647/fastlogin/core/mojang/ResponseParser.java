@@ -0,0 +1,286 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2021 <Your name and contributors>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.mojang;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Incremental parser of a HTTP/1.1 response. Received bytes are collected into a single growing array. Chunked bodies
+ * are decoded in place as the data arrives, so every byte is only decoded once.
+ */
+class ResponseParser {
+
+    private static final int INITIAL_SIZE = 2 * 1_024;
+    private static final int MAX_SIZE = 1_024 * 1_024;
+
+    private byte[] buffer = new byte[INITIAL_SIZE];
+    private int size;
+
+    private int statusCode = -1;
+    private String version;
+    private final Map<String, String> headers = new HashMap<>();
+    private int bodyStart = -1;
+
+    // end of the complete response - data after it belongs to nothing
+    private int messageEnd = -1;
+
+    private boolean chunked;
+    private int contentLength = -1;
+
+    // chunked bodies are moved to the front of the body - the decoded part always ends before the undecoded one
+    private int decodedEnd = -1;
+    private int chunkPosition;
+    // remaining data of the current chunk or -1 if the next chunk size line is expected
+    private int chunkRemaining = -1;
+
+    /**
+     * Add the received data.
+     *
+     * @param data received bytes in read mode
+     * @return true if the response is complete
+     * @throws IOException on malformed responses
+     */
+    boolean feed(ByteBuffer data) throws IOException {
+        int length = data.remaining();
+        if (size + length > MAX_SIZE) {
+            throw new IOException("Response exceeds the maximum size");
+        }
+
+        if (size + length > buffer.length) {
+            byte[] newBuffer = new byte[Math.max(buffer.length * 2, size + length)];
+            System.arraycopy(buffer, 0, newBuffer, 0, size);
+            buffer = newBuffer;
+        }
+
+        data.get(buffer, size, length);
+        size += length;
+        return isComplete();
+    }
+
+    /**
+     * Add the received data, but only wait for the response head. This is used for proxy tunnel responses which
+     * don't have any body.
+     *
+     * @param data received bytes in read mode
+     * @return true if the head is complete
+     * @throws IOException on malformed responses
+     */
+    boolean feedHead(ByteBuffer data) throws IOException {
+        feed(data);
+        return bodyStart >= 0 || parseHead();
+    }
+
+    /**
+     * Called if the connection was closed by the server.
+     *
+     * @return true if the response is complete
+     */
+    boolean finishOnClose() throws IOException {
+        if (isComplete()) {
+            return true;
+        }
+
+        // without any length indicators the body ends with the connection
+        return bodyStart >= 0 && !chunked && contentLength < 0;
+    }
+
+    /**
+     * @return true if any data was received
+     */
+    boolean hasData() {
+        return size > 0;
+    }
+
+    /**
+     * Check if the connection could be reused for another request after this complete response.
+     *
+     * @return true if the server allows it and we received exactly this response
+     */
+    boolean isKeepAlive() {
+        if (messageEnd != size || !"HTTP/1.1".equals(version)) {
+            return false;
+        }
+
+        return !"close".equalsIgnoreCase(headers.get("connection"));
+    }
+
+    HttpResponse toResponse() {
+        if (chunked) {
+            return new HttpResponse(statusCode, headers, buffer, bodyStart, decodedEnd - bodyStart);
+        }
+
+        int length = size - bodyStart;
+        if (contentLength >= 0) {
+            length = Math.min(length, contentLength);
+        }
+
+        return new HttpResponse(statusCode, headers, buffer, bodyStart, length);
+    }
+
+    private boolean isComplete() throws IOException {
+        if (bodyStart < 0 && !parseHead()) {
+            return false;
+        }
+
+        if (statusCode / 100 == 1 || statusCode == 204 || statusCode == 304) {
+            // responses without a body
+            contentLength = 0;
+            messageEnd = bodyStart;
+            return true;
+        }
+
+        if (chunked) {
+            return decodeChunks();
+        }
+
+        if (contentLength >= 0 && size - bodyStart >= contentLength) {
+            messageEnd = bodyStart + contentLength;
+            return true;
+        }
+
+        return false;
+    }
+
+    private boolean parseHead() throws IOException {
+        int end = indexOf(0, size, "\r\n\r\n");
+        if (end < 0) {
+            return false;
+        }
+
+        String[] lines = new String(buffer, 0, end, StandardCharsets.ISO_8859_1).split("\r\n");
+
+        // HTTP/1.1 200 OK
+        String[] statusLine = lines[0].split(" ", 3);
+        if (statusLine.length < 2 || !statusLine[0].startsWith("HTTP/")) {
+            throw new IOException("Malformed status line: " + lines[0]);
+        }
+
+        try {
+            version = statusLine[0];
+            statusCode = Integer.parseInt(statusLine[1]);
+            for (int i = 1; i < lines.length; i++) {
+                int separator = lines[i].indexOf(':');
+                if (separator > 0) {
+                    String name = lines[i].substring(0, separator).trim().toLowerCase(Locale.ROOT);
+                    headers.put(name, lines[i].substring(separator + 1).trim());
+                }
+            }
+
+            String length = headers.get("content-length");
+            if (length != null) {
+                contentLength = Integer.parseInt(length);
+            }
+        } catch (NumberFormatException numberEx) {
+            throw new IOException("Malformed response head", numberEx);
+        }
+
+        chunked = "chunked".equalsIgnoreCase(headers.get("transfer-encoding"));
+        bodyStart = end + 4;
+        return true;
+    }
+
+    private boolean decodeChunks() throws IOException {
+        if (decodedEnd < 0) {
+            decodedEnd = bodyStart;
+            chunkPosition = bodyStart;
+        }
+
+        while (true) {
+            if (chunkRemaining >= 0) {
+                int available = Math.min(chunkRemaining, size - chunkPosition);
+                System.arraycopy(buffer, chunkPosition, buffer, decodedEnd, available);
+                decodedEnd += available;
+                chunkPosition += available;
+                chunkRemaining -= available;
+
+                // the chunk data is followed by CRLF
+                if (chunkRemaining > 0 || size - chunkPosition < 2) {
+                    return false;
+                }
+
+                chunkPosition += 2;
+                chunkRemaining = -1;
+            }
+
+            int lineEnd = indexOf(chunkPosition, size, "\r\n");
+            if (lineEnd < 0) {
+                return false;
+            }
+
+            // ignore chunk extensions
+            String sizeLine = new String(buffer, chunkPosition, lineEnd - chunkPosition, StandardCharsets.ISO_8859_1);
+            int extension = sizeLine.indexOf(';');
+            if (extension >= 0) {
+                sizeLine = sizeLine.substring(0, extension);
+            }
+
+            int chunkSize;
+            try {
+                chunkSize = Integer.parseInt(sizeLine.trim(), 16);
+            } catch (NumberFormatException numberEx) {
+                throw new IOException("Malformed chunk size: " + sizeLine, numberEx);
+            }
+
+            if (chunkSize < 0) {
+                throw new IOException("Malformed chunk size: " + sizeLine);
+            }
+
+            if (chunkSize == 0) {
+                // last chunk - skip the optional trailers
+                int trailerEnd = indexOf(lineEnd, size, "\r\n\r\n");
+                if (trailerEnd < 0) {
+                    return false;
+                }
+
+                messageEnd = trailerEnd + 4;
+                return true;
+            }
+
+            chunkPosition = lineEnd + 2;
+            chunkRemaining = chunkSize;
+        }
+    }
+
+    private int indexOf(int from, int to, String pattern) {
+        outer:
+        for (int i = from; i <= to - pattern.length(); i++) {
+            for (int j = 0; j < pattern.length(); j++) {
+                if (buffer[i + j] != pattern.charAt(j)) {
+                    continue outer;
+                }
+            }
+
+            return i;
+        }
+
+        return -1;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2021 <Your name and contributors>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.mojang;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Objects;
+
+/**
+ * Path of our requests to Mojang. Either directly from a local address or through a HTTP proxy.
+ */
+public class Route {
+
+    /**
+     * Use the default address of the operating system without any proxy.
+     */
+    public static final Route DIRECT = new Route(null, null);
+
+    private final InetAddress localAddress;
+    private final InetSocketAddress proxy;
+
+    /**
+     * @param localAddress local address to bind to or null to use the default one
+     * @param proxy HTTP proxy address or null for direct connections
+     */
+    public Route(InetAddress localAddress, InetSocketAddress proxy) {
+        this.localAddress = localAddress;
+        this.proxy = proxy;
+    }
+
+    public InetAddress getLocalAddress() {
+        return localAddress;
+    }
+
+    public InetSocketAddress getProxy() {
+        return proxy;
+    }
+
+    public boolean isProxy() {
+        return proxy != null;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) return true;
+        if (!(other instanceof Route)) return false;
+        Route route = (Route) other;
+        return Objects.equals(localAddress, route.localAddress) && Objects.equals(proxy, route.proxy);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(localAddress, proxy);
+    }
+
+    @Override
+    public String toString() {
+        if (proxy != null) {
+            return "proxy " + proxy;
+        }
+
+        return localAddress == null ? "default address" : localAddress.getHostAddress();
+    }
+}
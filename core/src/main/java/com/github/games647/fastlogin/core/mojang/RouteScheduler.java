@@ -0,0 +1,288 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2021 <Your name and contributors>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.mojang;
+
+import com.github.games647.fastlogin.core.MonotonicClock;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * The Mojang rate-limit applies per source IP. Therefore we keep a separate budget for every outgoing address and
+ * proxy and route each request to the one with the most remaining requests. Proxies are only used if all direct
+ * addresses are exhausted. Then healthy proxies are chosen weighted by their latency. Direct routes could be further
+ * limited by a quota that is shared between all servers of a network.
+ */
+public class RouteScheduler {
+
+    private final Map<Route, RequestBudget> directRoutes = new LinkedHashMap<>();
+    private final Map<Route, RequestBudget> proxyRoutes = new LinkedHashMap<>();
+    private final ProxyHealth proxyHealth;
+
+    private ClusterQuota clusterQuota;
+
+    /**
+     * @param addresses local addresses or empty to use only the default address
+     * @param proxies HTTP proxies
+     * @param maxRequests maximum number of requests per route within the window
+     * @param window time in milliseconds
+     */
+    public RouteScheduler(Collection<InetAddress> addresses, Collection<Proxy> proxies, int maxRequests, long window) {
+        if (addresses.isEmpty()) {
+            directRoutes.put(Route.DIRECT, new RequestBudget(maxRequests, window));
+        }
+
+        for (InetAddress address : addresses) {
+            directRoutes.put(new Route(address, null), new RequestBudget(maxRequests, window));
+        }
+
+        for (Proxy proxy : proxies) {
+            Route route = new Route(null, (InetSocketAddress) proxy.address());
+            proxyRoutes.put(route, new RequestBudget(maxRequests, window));
+        }
+
+        proxyHealth = new ProxyHealth(proxyRoutes.keySet());
+    }
+
+    /**
+     * Reserve a request on the route with the most remaining requests.
+     *
+     * @return the route or empty if all of them are exhausted
+     */
+    public Optional<Route> acquire() {
+        long now = MonotonicClock.SYSTEM.millis();
+        Optional<Route> route = acquireDirect(now, 0);
+        if (route.isPresent()) {
+            return route;
+        }
+
+        return acquireProxy(now);
+    }
+
+    /**
+     * Reserve a request for background work on a direct route, but only if more than the given number of requests
+     * remain for logins.
+     *
+     * @param reserved number of requests to keep for logins per route
+     * @return the route or empty if there are no spare requests
+     */
+    public Optional<Route> acquireSpare(int reserved) {
+        return acquireDirect(MonotonicClock.SYSTEM.millis(), reserved);
+    }
+
+    /**
+     * Count a request that is sent regardless of the budget like the session verification of a login. It uses the
+     * direct route with the most remaining requests, so {@link #acquireSpare(int)} only hands out requests that are
+     * really unused.
+     *
+     * @return the charged route
+     */
+    public Route charge() {
+        long now = MonotonicClock.SYSTEM.millis();
+        Route best = null;
+        int bestRemaining = -1;
+        for (Map.Entry<Route, RequestBudget> entry : directRoutes.entrySet()) {
+            int remaining = entry.getValue().remaining(now);
+            if (remaining > bestRemaining) {
+                best = entry.getKey();
+                bestRemaining = remaining;
+            }
+        }
+
+        directRoutes.get(best).record(now);
+        return best;
+    }
+
+    /**
+     * Count a request that is sent on this route regardless of the budget. Routes that are not direct are ignored.
+     *
+     * @param route the used route
+     */
+    public void charge(Route route) {
+        RequestBudget budget = directRoutes.get(route);
+        if (budget != null) {
+            budget.record(MonotonicClock.SYSTEM.millis());
+        }
+    }
+
+    private Optional<Route> acquireProxy(long now) {
+        List<Route> candidates = new ArrayList<>(proxyRoutes.size());
+        for (Map.Entry<Route, RequestBudget> entry : proxyRoutes.entrySet()) {
+            if (entry.getValue().remaining(now) > 0) {
+                candidates.add(entry.getKey());
+            }
+        }
+
+        while (!candidates.isEmpty()) {
+            Optional<Route> chosen = proxyHealth.choose(candidates);
+            if (!chosen.isPresent()) {
+                // all remaining proxies are evicted
+                return Optional.empty();
+            }
+
+            if (proxyRoutes.get(chosen.get()).tryAcquire(now)) {
+                return chosen;
+            }
+
+            candidates.remove(chosen.get());
+        }
+
+        return Optional.empty();
+    }
+
+    private Optional<Route> acquireDirect(long now, int reserved) {
+        Collection<Route> denied = new HashSet<>();
+        while (true) {
+            Route best = null;
+            int bestRemaining = reserved;
+            for (Map.Entry<Route, RequestBudget> entry : directRoutes.entrySet()) {
+                int remaining = entry.getValue().remaining(now);
+                if (remaining > bestRemaining && !denied.contains(entry.getKey())) {
+                    best = entry.getKey();
+                    bestRemaining = remaining;
+                }
+            }
+
+            if (best == null) {
+                return Optional.empty();
+            }
+
+            ClusterQuota quota = clusterQuota;
+            if (quota != null && !quota.tryAcquire(best)) {
+                // other servers of the network used it
+                denied.add(best);
+                continue;
+            }
+
+            // another thread could have taken the last request in the meanwhile
+            if (directRoutes.get(best).tryAcquire(now)) {
+                return Optional.of(best);
+            }
+
+            if (quota != null) {
+                quota.release(best);
+            }
+        }
+    }
+
+    /**
+     * @return number of requests available on all routes except evicted proxies
+     */
+    public int getAvailable() {
+        long now = MonotonicClock.SYSTEM.millis();
+        int available = 0;
+        for (Map.Entry<Route, RequestBudget> entry : directRoutes.entrySet()) {
+            available += entry.getValue().remaining(now);
+        }
+
+        for (Map.Entry<Route, RequestBudget> entry : proxyRoutes.entrySet()) {
+            if (proxyHealth.isAvailable(entry.getKey())) {
+                available += entry.getValue().remaining(now);
+            }
+        }
+
+        return available;
+    }
+
+    /**
+     * @return time in milliseconds until any route has a request available again or 0 if there is one already
+     */
+    public long getRetryDelay() {
+        long now = MonotonicClock.SYSTEM.millis();
+        long delay = Long.MAX_VALUE;
+        for (RequestBudget budget : directRoutes.values()) {
+            delay = Math.min(delay, budget.nextRelease(now));
+        }
+
+        for (Map.Entry<Route, RequestBudget> entry : proxyRoutes.entrySet()) {
+            if (proxyHealth.isAvailable(entry.getKey())) {
+                delay = Math.min(delay, entry.getValue().nextRelease(now));
+            }
+        }
+
+        return delay;
+    }
+
+    /**
+     * @return all routes except evicted proxies - direct ones first
+     */
+    public List<Route> getRoutes() {
+        List<Route> routes = new ArrayList<>(directRoutes.keySet());
+        for (Route proxy : proxyRoutes.keySet()) {
+            if (proxyHealth.isAvailable(proxy)) {
+                routes.add(proxy);
+            }
+        }
+
+        return routes;
+    }
+
+    /**
+     * Additionally require a lease of the network-wide quota for direct routes.
+     *
+     * @param clusterQuota shared quota or null to only use the local budget
+     */
+    public void setClusterQuota(ClusterQuota clusterQuota) {
+        if (clusterQuota != null) {
+            clusterQuota.register(directRoutes.keySet());
+        }
+
+        this.clusterQuota = clusterQuota;
+    }
+
+    public ProxyHealth getProxyHealth() {
+        return proxyHealth;
+    }
+
+    /**
+     * Mojang responded with a rate-limit error. Don't use this route until previous requests expire.
+     *
+     * @param route the rate-limited route
+     */
+    public void markRateLimited(Route route) {
+        RequestBudget budget = directRoutes.get(route);
+        if (budget == null) {
+            budget = proxyRoutes.get(route);
+        }
+
+        if (budget != null) {
+            budget.exhaust(MonotonicClock.SYSTEM.millis());
+        }
+
+        ClusterQuota quota = clusterQuota;
+        if (quota != null && !route.isProxy()) {
+            quota.markRateLimited(route);
+        }
+    }
+}
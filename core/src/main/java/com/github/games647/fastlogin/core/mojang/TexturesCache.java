@@ -0,0 +1,142 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2021 <Your name and contributors>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.mojang;
+
+import com.github.games647.craftapi.model.skin.SkinProperty;
+import com.github.games647.fastlogin.core.ExpiringMap;
+import com.github.games647.fastlogin.core.HashedWheelTimer;
+
+import java.io.IOException;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Signed textures property of premium players from verified session server responses. Properties are versioned by
+ * the timestamp inside the signed value, so an older response can never replace a newer skin. If the cache is full,
+ * the textures written the longest time ago are evicted.
+ *
+ * Other plugins can query the skin of premium players using {@link #get(UUID)}.
+ */
+public class TexturesCache {
+
+    private final ConcurrentMap<UUID, CachedTextures> cache;
+    private final int maxSize;
+
+    // write order - expired players are always at the front, because they expire after their last write
+    private final Set<UUID> writeOrder = new LinkedHashSet<>();
+
+    /**
+     * @param timer shared timer for the expirations
+     * @param expire time in minutes after the last join or a non-positive value to keep them
+     * @param maxSize maximum number of players or a non-positive value for no limit
+     */
+    public TexturesCache(HashedWheelTimer timer, int expire, int maxSize) {
+        if (expire > 0) {
+            this.cache = new ExpiringMap<>(timer, expire, TimeUnit.MINUTES);
+        } else {
+            this.cache = new ConcurrentHashMap<>();
+        }
+
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Save the textures of a verified response if they are newer than the cached ones.
+     *
+     * @param id premium UUID
+     * @param property signed textures property
+     */
+    public synchronized void put(UUID id, SkinProperty property) {
+        CachedTextures textures = new CachedTextures(property, parseTimestamp(property.getValue()));
+        CachedTextures cached = cache.get(id);
+        if (cached != null && cached.timestamp >= textures.timestamp) {
+            // rewriting it restarts the expiration
+            textures = cached;
+        }
+
+        writeOrder.remove(id);
+        int others = cached == null ? cache.size() : cache.size() - 1;
+        Iterator<UUID> oldest = writeOrder.iterator();
+        while (oldest.hasNext()) {
+            UUID oldestId = oldest.next();
+            boolean expired = !cache.containsKey(oldestId);
+            if (!expired && (maxSize <= 0 || others < maxSize)) {
+                break;
+            }
+
+            // drop expired ones from the order or evict the oldest to make room
+            oldest.remove();
+            if (!expired) {
+                cache.remove(oldestId);
+                others--;
+            }
+        }
+
+        writeOrder.add(id);
+        cache.put(id, textures);
+    }
+
+    /**
+     * @param id premium UUID
+     * @return the last known textures property of this player
+     */
+    public Optional<SkinProperty> get(UUID id) {
+        return Optional.ofNullable(cache.get(id)).map(textures -> textures.property);
+    }
+
+    public synchronized void invalidate(UUID id) {
+        writeOrder.remove(id);
+        cache.remove(id);
+    }
+
+    private static long parseTimestamp(String value) {
+        try {
+            byte[] json = Base64.getDecoder().decode(value);
+            return ResponseDecoder.readTimestamp(new Utf8ByteReader(json, 0, json.length));
+        } catch (IllegalArgumentException | IllegalStateException | IOException ex) {
+            // not the format of Mojang - treat it as oldest
+            return -1;
+        }
+    }
+
+    private static class CachedTextures {
+
+        private final SkinProperty property;
+        private final long timestamp;
+
+        CachedTextures(SkinProperty property, long timestamp) {
+            this.property = property;
+            this.timestamp = timestamp;
+        }
+    }
+}
@@ -23,3 +23,28 @@
  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
  * SOFTWARE.
  */
+package com.github.games647.fastlogin.core.mojang;
+
+import com.github.games647.craftapi.UUIDAdapter;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * Mojang represents UUIDs without dashes in their responses.
+ */
+public class UUIDTypeAdapter extends TypeAdapter<UUID> {
+
+    @Override
+    public void write(JsonWriter out, UUID value) throws IOException {
+        out.value(UUIDAdapter.toMojangId(value));
+    }
+
+    @Override
+    public UUID read(JsonReader in) throws IOException {
+        return UUIDAdapter.parseId(in.nextString());
+    }
+}
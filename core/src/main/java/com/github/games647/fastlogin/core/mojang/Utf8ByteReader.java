@@ -0,0 +1,139 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2021 <Your name and contributors>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.mojang;
+
+import java.io.Reader;
+
+/**
+ * Decodes UTF-8 directly from the received bytes. Unlike {@link java.io.InputStreamReader} this doesn't allocate a
+ * charset decoder and an additional 8 KiB byte buffer for every response. Malformed sequences are replaced like the
+ * default decoder does.
+ */
+class Utf8ByteReader extends Reader {
+
+    private static final char REPLACEMENT = '\uFFFD';
+
+    private final byte[] buffer;
+    private final int end;
+    private int position;
+
+    // low surrogate of a supplementary character that didn't fit into the last read
+    private char pendingLow;
+
+    Utf8ByteReader(byte[] buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.position = offset;
+        this.end = offset + length;
+    }
+
+    @Override
+    public int read(char[] chars, int offset, int length) {
+        if (length == 0) {
+            return 0;
+        }
+
+        int written = 0;
+        if (pendingLow != 0) {
+            chars[offset] = pendingLow;
+            pendingLow = 0;
+            written++;
+        }
+
+        while (written < length && position < end) {
+            int first = buffer[position] & 0xFF;
+            if (first < 0x80) {
+                // JSON is mostly ASCII
+                chars[offset + written] = (char) first;
+                position++;
+                written++;
+                continue;
+            }
+
+            int codePoint = decodeSequence(first);
+            if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                chars[offset + written] = (char) codePoint;
+                written++;
+            } else {
+                chars[offset + written] = Character.highSurrogate(codePoint);
+                written++;
+                char low = Character.lowSurrogate(codePoint);
+                if (written < length) {
+                    chars[offset + written] = low;
+                    written++;
+                } else {
+                    pendingLow = low;
+                }
+            }
+        }
+
+        return written == 0 ? -1 : written;
+    }
+
+    private int decodeSequence(int first) {
+        int continuation;
+        int codePoint;
+        int min;
+        if (first >= 0xC2 && first <= 0xDF) {
+            continuation = 1;
+            codePoint = first & 0x1F;
+            min = 0x80;
+        } else if (first >= 0xE0 && first <= 0xEF) {
+            continuation = 2;
+            codePoint = first & 0x0F;
+            min = 0x800;
+        } else if (first >= 0xF0 && first <= 0xF4) {
+            continuation = 3;
+            codePoint = first & 0x07;
+            min = Character.MIN_SUPPLEMENTARY_CODE_POINT;
+        } else {
+            position++;
+            return REPLACEMENT;
+        }
+
+        position++;
+        for (int i = 0; i < continuation; i++) {
+            if (position >= end || (buffer[position] & 0xC0) != 0x80) {
+                // truncated sequence - continue with the current byte
+                return REPLACEMENT;
+            }
+
+            codePoint = (codePoint << 6) | (buffer[position] & 0x3F);
+            position++;
+        }
+
+        if (codePoint < min || codePoint > Character.MAX_CODE_POINT
+                || (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE)) {
+            return REPLACEMENT;
+        }
+
+        return codePoint;
+    }
+
+    @Override
+    public void close() {
+        // nothing to release
+    }
+}
@@ -25,14 +25,19 @@
  */
 package com.github.games647.fastlogin.core.shared;
 
-import com.github.games647.craftapi.resolver.MojangResolver;
-import com.github.games647.craftapi.resolver.http.RotatingProxySelector;
+import com.github.games647.fastlogin.core.AsyncScheduler.WorkKind;
 import com.github.games647.fastlogin.core.AuthStorage;
 import com.github.games647.fastlogin.core.CommonUtil;
+import com.github.games647.fastlogin.core.KnownNames;
+import com.github.games647.fastlogin.core.LoginAdmission;
 import com.github.games647.fastlogin.core.RateLimiter;
 import com.github.games647.fastlogin.core.hooks.AuthPlugin;
 import com.github.games647.fastlogin.core.hooks.DefaultPasswordGenerator;
 import com.github.games647.fastlogin.core.hooks.PasswordGenerator;
+import com.github.games647.fastlogin.core.mojang.ClusterQuota;
+import com.github.games647.fastlogin.core.mojang.MojangApiConnector;
+import com.github.games647.fastlogin.core.mojang.NegativeProfileCache;
+import com.github.games647.fastlogin.core.mojang.TexturesCache;
 import com.google.common.net.HostAndPort;
 import com.zaxxer.hikari.HikariConfig;
 
@@ -46,14 +51,18 @@ import java.net.Proxy.Type;
 import java.net.UnknownHostException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.sql.SQLException;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 import net.md_5.bungee.config.Configuration;
 import net.md_5.bungee.config.ConfigurationProvider;
@@ -62,6 +71,7 @@ import net.md_5.bungee.config.YamlConfiguration;
 import org.slf4j.Logger;
 
 import static java.util.function.Function.identity;
+import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toMap;
 import static java.util.stream.Collectors.toSet;
 
@@ -75,20 +85,29 @@ public class FastLoginCore<P extends C, C, T extends PlatformPlugin<C>> {
     private static final long MAX_EXPIRE_RATE = 1_000_000;
 
     private final Map<String, String> localeMessages = new ConcurrentHashMap<>();
-    private final ConcurrentMap<String, Object> pendingLogin = CommonUtil.buildCache(5, -1);
+    private final ConcurrentMap<String, Object> pendingLogin;
     private final Collection<UUID> pendingConfirms = new HashSet<>();
     private final T plugin;
 
-    private final MojangResolver resolver = new MojangResolver();
+    private final MojangApiConnector apiConnector;
 
     private Configuration config;
     private AuthStorage storage;
     private RateLimiter rateLimiter;
+    private LoginAdmission admission;
+    private LoginPipeline pipeline;
+    private volatile KnownNames knownNames;
+    private long loginTimeout;
+    private NegativeProfileCache negativeCache;
+    private TexturesCache texturesCache;
     private PasswordGenerator<P> passwordGenerator = new DefaultPasswordGenerator<>();
     private AuthPlugin<P> authPlugin;
 
     public FastLoginCore(T plugin) {
         this.plugin = plugin;
+        this.pendingLogin = CommonUtil.buildCache(plugin.getScheduler().getTimer(), 5, -1);
+        this.apiConnector = new MojangApiConnector(plugin.getLog(), plugin.getThreadFactory(),
+                plugin.getScheduler().getTimer());
     }
 
     public void load() {
@@ -114,6 +133,12 @@ public class FastLoginCore<P extends C, C, T extends PlatformPlugin<C>> {
             return;
         }
 
+        if (config.get("virtual-threads.enabled", false)
+                && !plugin.getScheduler().enableVirtualThreads(config.getInt("virtual-threads.max-concurrency", 256))) {
+            plugin.getLog().warn("Virtual threads are not supported by this runtime (Java 21+). "
+                    + "Using the thread pool instead");
+        }
+
         int maxCon = config.getInt("anti-bot.connections", 200);
         long expireTime = config.getLong("anti-bot.expire", 5) * 60 * 1_000L;
         if (expireTime > MAX_EXPIRE_RATE) {
@@ -121,6 +146,24 @@ public class FastLoginCore<P extends C, C, T extends PlatformPlugin<C>> {
         }
 
         rateLimiter = new RateLimiter(maxCon, expireTime);
+        admission = new LoginAdmission(plugin.getLog(), config.getInt("admission.max-pending", 512));
+        loginTimeout = config.getLong("admission.login-deadline", 25) * 1_000L;
+
+        pipeline = new LoginPipeline(plugin.getLog(), config);
+        long reportInterval = config.getLong("login-stages.report-interval", 0);
+        if (reportInterval > 0) {
+            plugin.getScheduler().runAsyncRepeating(pipeline::report, reportInterval, TimeUnit.MINUTES);
+        }
+
+        long negativeExpire = config.getLong("negative-cache.expire", 10) * 60 * 1_000L;
+        int negativeSize = config.getInt("negative-cache.max-size", 100_000);
+        if (negativeExpire > 0 && negativeSize > 0) {
+            negativeCache = new NegativeProfileCache(negativeExpire, negativeSize);
+        }
+
+        texturesCache = new TexturesCache(plugin.getScheduler().getTimer(),
+                config.getInt("textures-cache.expire", 60), config.getInt("textures-cache.max-size", 1_000));
+
         Set<Proxy> proxies = config.getStringList("proxies")
                 .stream()
                 .map(HostAndPort::fromString)
@@ -137,9 +180,38 @@ public class FastLoginCore<P extends C, C, T extends PlatformPlugin<C>> {
             }
         }
 
-        resolver.setMaxNameRequests(config.getInt("mojang-request-limit"));
-        resolver.setProxySelector(new RotatingProxySelector(proxies));
-        resolver.setOutgoingAddresses(addresses);
+        int requestLimit = config.getInt("mojang-request-limit");
+        apiConnector.setEndpoints(loadUrls("mojang-api-urls", MojangApiConnector.API_URL),
+                loadUrls("mojang-session-urls", MojangApiConnector.SESSION_URL));
+        apiConnector.setRoutes(addresses, proxies, requestLimit);
+
+        apiConnector.setExecutor(plugin.getScheduler().getExecutor(WorkKind.BLOCKING));
+        apiConnector.setBatchWindow(config.getInt("mojang-batch-window", 5));
+        apiConnector.setRetryQueue(config.getLong("rate-limit-queue.max-wait", 10) * 1_000L,
+                plugin.getScheduler().getExecutor(WorkKind.BLOCKING));
+        if (config.get("circuit-breaker.enabled", true)) {
+            apiConnector.setCircuitBreaker(config.getInt("circuit-breaker.window-size", 20),
+                    config.getInt("circuit-breaker.failure-rate", 50),
+                    config.getLong("circuit-breaker.slow-call", 3_000),
+                    config.getLong("circuit-breaker.open-duration", 30) * 1_000L);
+        }
+
+        if (config.get("session-hedging.enabled", false)) {
+            apiConnector.setHedging(config.getInt("session-hedging.percentile", 95),
+                    config.getInt("session-hedging.max-ratio", 10));
+        }
+    }
+
+    private List<String> loadUrls(String key, String defaultUrl) {
+        List<String> urls = config.getStringList(key)
+                .stream()
+                .map(url -> url.endsWith("/") ? url.substring(0, url.length() - 1) : url)
+                .collect(toList());
+        if (urls.isEmpty()) {
+            return Collections.singletonList(defaultUrl);
+        }
+
+        return urls;
     }
 
     private Configuration loadFile(String fileName) throws IOException {
@@ -165,8 +237,8 @@ public class FastLoginCore<P extends C, C, T extends PlatformPlugin<C>> {
         return config;
     }
 
-    public MojangResolver getResolver() {
-        return resolver;
+    public MojangApiConnector getApiConnector() {
+        return apiConnector;
     }
 
     public AuthStorage getStorage() {
@@ -211,6 +283,9 @@ public class FastLoginCore<P extends C, C, T extends PlatformPlugin<C>> {
         storage = new AuthStorage(this, host, port, database, databaseConfig, useSSL);
         try {
             storage.createTables();
+            loadKnownNames();
+            startClusterQuota();
+            startNameChangeReconciler();
             return true;
         } catch (Exception ex) {
             plugin.getLog().warn("Failed to setup database. Disabling plugin...", ex);
@@ -218,6 +293,53 @@ public class FastLoginCore<P extends C, C, T extends PlatformPlugin<C>> {
         }
     }
 
+    private void loadKnownNames() {
+        int expectedNames = config.getInt("priority-lanes.expected-names", 100_000);
+        if (!config.get("priority-lanes.enabled", true) || expectedNames <= 0) {
+            return;
+        }
+
+        // available before loading in order to include profiles that are saved in the meantime
+        KnownNames names = new KnownNames(expectedNames);
+        knownNames = names;
+        plugin.getScheduler().runAsync(() -> {
+            // otherwise known players would be classified as unknown
+            if (storage.loadNames(names::add)) {
+                names.setComplete();
+            }
+        });
+    }
+
+    private void startClusterQuota() throws SQLException {
+        if (!config.get("cluster-quota.enabled", false)) {
+            return;
+        }
+
+        storage.getQuotaStorage().createTable();
+        ClusterQuota quota = new ClusterQuota(storage.getQuotaStorage(), plugin.getLog(),
+                config.get("cluster-quota.egress", "default"), config.getInt("mojang-request-limit"),
+                config.getInt("cluster-quota.lease-size", 20), plugin.getScheduler().getExecutor(WorkKind.BLOCKING));
+        apiConnector.setClusterQuota(quota);
+
+        // lease ahead of time, so logins rarely find an empty lease
+        plugin.getScheduler().runAsync(quota::renew);
+        plugin.getScheduler().runAsyncRepeating(quota::renew, config.getLong("cluster-quota.renew-interval", 5),
+                TimeUnit.SECONDS);
+    }
+
+    private void startNameChangeReconciler() {
+        long interval = config.getLong("name-change-reconciliation.interval", 10);
+        if (!config.get("nameChangeCheck", false) || interval <= 0) {
+            return;
+        }
+
+        int reserved = config.getInt("mojang-request-limit")
+                * config.getInt("name-change-reconciliation.reserved", 50) / 100;
+        NameChangeReconciler reconciler = new NameChangeReconciler(storage, apiConnector, plugin.getLog(),
+                config.getInt("name-change-reconciliation.batch-size", 20), reserved);
+        plugin.getScheduler().runAsyncRepeating(reconciler, interval, TimeUnit.MINUTES);
+    }
+
     private boolean checkDriver(String className) {
         try {
             Class.forName(className);
@@ -259,6 +381,61 @@ public class FastLoginCore<P extends C, C, T extends PlatformPlugin<C>> {
         return rateLimiter;
     }
 
+    /**
+     * @return names with a stored profile or null if disabled
+     */
+    public KnownNames getKnownNames() {
+        return knownNames;
+    }
+
+    /**
+     * Decide cheaply if a login can skip the queue, because it's decided by the stored profile without Mojang.
+     *
+     * @param username the name of the incoming player
+     * @return true if the name probably has a stored profile
+     */
+    public boolean isKnownName(String username) {
+        KnownNames names = knownNames;
+        return names != null && names.isComplete() && names.mightBeKnown(username);
+    }
+
+    /**
+     * Start the deadline of a login step. This should be called as soon as the packet arrives.
+     *
+     * @return deadline after which the client most likely gave up
+     */
+    public LoginDeadline startDeadline() {
+        return new LoginDeadline(loginTimeout);
+    }
+
+    /**
+     * @return capacity check for logins that are currently processed
+     */
+    public LoginAdmission getAdmission() {
+        return admission;
+    }
+
+    /**
+     * @return the steps of a login with their own queues and concurrency limits
+     */
+    public LoginPipeline getPipeline() {
+        return pipeline;
+    }
+
+    /**
+     * @return cache of names without a paid account or null if disabled
+     */
+    public NegativeProfileCache getNegativeCache() {
+        return negativeCache;
+    }
+
+    /**
+     * @return signed textures of recently joined premium players
+     */
+    public TexturesCache getTexturesCache() {
+        return texturesCache;
+    }
+
     public void setAuthPluginHook(AuthPlugin<P> authPlugin) {
         this.authPlugin = authPlugin;
     }
@@ -283,6 +460,7 @@ public class FastLoginCore<P extends C, C, T extends PlatformPlugin<C>> {
     public void close() {
         plugin.getLog().info("Safely shutting down scheduler. This could take up to one minute.");
         plugin.getScheduler().shutdown();
+        apiConnector.close();
 
         if (storage != null) {
             storage.close();
@@ -88,6 +88,10 @@ public abstract class ForceLoginManagement<P extends C, C, L extends LoginSessio
                         onForceActionSuccess(session);
                     }
                 }
+            } else if (session.isFallback()) {
+                // the premium check was skipped - a paid account would be marked as cracked permanently
+                core.getPlugin().getLog().info("Not saving the cracked state of {} - Mojang was unavailable",
+                        getName(player));
             } else if (playerProfile != null) {
                 //cracked player
                 playerProfile.setId(null);
@@ -0,0 +1,153 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2021 <Your name and contributors>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.shared;
+
+import com.github.games647.fastlogin.core.AsyncScheduler;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Tracks the pending work of logins per connection. If the connection closes, the queued tasks and HTTP requests are
+ * cancelled and running tasks stop before their next expensive step. This frees the pools for other logins, for
+ * example during reconnect spam.
+ *
+ * @param <K> connection identifier
+ */
+public class InFlightLogins<K> {
+
+    private final Map<K, Login> logins = new ConcurrentHashMap<>();
+    private final AtomicLong cancelled = new AtomicLong();
+
+    /**
+     * @param scheduler checks the connection state of platforms without a close event every second
+     */
+    public InFlightLogins(AsyncScheduler scheduler) {
+        scheduler.runAsyncRepeating(this::sweep, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Start tracking a login step. A previous step of the same connection is finished.
+     *
+     * @param connection connection identifier
+     * @param deadline deadline of this step - it will be cancelled if the connection closes
+     * @param connected checks if the connection is still open for platforms without a close event
+     */
+    public void start(K connection, LoginDeadline deadline, BooleanSupplier connected) {
+        logins.put(connection, new Login(deadline, connected));
+    }
+
+    /**
+     * Cancel the future if the connection closes. The future is usually the pending task or request.
+     *
+     * @param connection connection identifier
+     * @param future pending work of the login
+     */
+    public void track(K connection, CompletableFuture<?> future) {
+        Login login = logins.get(connection);
+        if (login == null || login.deadline.isCancelled()) {
+            future.cancel(false);
+            return;
+        }
+
+        login.futures.add(future);
+        future.whenComplete((result, error) -> login.futures.remove(future));
+    }
+
+    /**
+     * Cancel all pending work of this connection, because it closed.
+     *
+     * @param connection connection identifier
+     * @return true if there was pending work
+     */
+    public boolean cancel(K connection) {
+        Login login = logins.remove(connection);
+        if (login == null) {
+            return false;
+        }
+
+        login.cancel();
+        cancelled.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * @return number of connections with pending work
+     */
+    public int size() {
+        return logins.size();
+    }
+
+    /**
+     * @return number of logins that were abandoned, because their connection closed
+     */
+    public long getCancelled() {
+        return cancelled.get();
+    }
+
+    private void sweep() {
+        for (Iterator<Entry<K, Login>> iterator = logins.entrySet().iterator(); iterator.hasNext(); ) {
+            Login login = iterator.next().getValue();
+            if (!login.connected.getAsBoolean()) {
+                iterator.remove();
+                login.cancel();
+                cancelled.incrementAndGet();
+            } else if (login.deadline.isExpired() && login.futures.isEmpty()) {
+                // nothing left to cancel - keeps the map small if the close event is missing
+                iterator.remove();
+            }
+        }
+    }
+
+    private static class Login {
+
+        private final LoginDeadline deadline;
+        private final BooleanSupplier connected;
+        private final Queue<CompletableFuture<?>> futures = new ConcurrentLinkedQueue<>();
+
+        Login(LoginDeadline deadline, BooleanSupplier connected) {
+            this.deadline = deadline;
+            this.connected = connected;
+        }
+
+        private void cancel() {
+            deadline.cancel();
+
+            CompletableFuture<?> future;
+            while ((future = futures.poll()) != null) {
+                future.cancel(false);
+            }
+        }
+    }
+}
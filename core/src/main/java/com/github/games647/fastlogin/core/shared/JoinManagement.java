@@ -26,17 +26,33 @@
 package com.github.games647.fastlogin.core.shared;
 
 import com.github.games647.craftapi.model.Profile;
-import com.github.games647.craftapi.resolver.RateLimitException;
+import com.github.games647.fastlogin.core.AsyncScheduler;
+import com.github.games647.fastlogin.core.AsyncScheduler.WorkKind;
 import com.github.games647.fastlogin.core.StoredProfile;
 import com.github.games647.fastlogin.core.hooks.AuthPlugin;
+import com.github.games647.fastlogin.core.mojang.CircuitOpenException;
+import com.github.games647.fastlogin.core.mojang.DeferredLookupQueue;
+import com.github.games647.fastlogin.core.mojang.MojangApiConnector;
+import com.github.games647.fastlogin.core.mojang.NegativeProfileCache;
+import com.github.games647.fastlogin.core.mojang.RateLimitReachedException;
+import com.github.games647.fastlogin.core.shared.LoginPipeline.Stage;
 import com.github.games647.fastlogin.core.shared.event.FastLoginPreLoginEvent;
 
 import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
 
 import net.md_5.bungee.config.Configuration;
 
 public abstract class JoinManagement<P extends C, C, S extends LoginSource> {
 
+    // time in milliseconds that deferred lookups leave for the rate-limit fallback before the login deadline
+    private static final long FALLBACK_MARGIN = 2_000;
+
     protected final FastLoginCore<P, C, ?> core;
     protected final AuthPlugin<P> authHook;
 
@@ -46,73 +62,314 @@ public abstract class JoinManagement<P extends C, C, S extends LoginSource> {
     }
 
     public void onLogin(String username, S source) {
-        core.getPlugin().getLog().info("Handling player {}", username);
-        StoredProfile profile = core.getStorage().loadProfile(username);
-        if (profile == null) {
-            return;
+        onLogin(username, source, core.startDeadline());
+    }
+
+    /**
+     * Handle the login and block until it's done. This is for platforms that expect the decision before their event
+     * returns. The database and auth plugin calls still run on the blocking pool, so the calling thread only waits.
+     *
+     * @param username requested name
+     * @param source connection of the player
+     * @param deadline started on the arrival of the login packet - expired or cancelled logins are abandoned before
+     *                 each expensive step
+     * @throws RejectedExecutionException if the profile stage is saturated
+     */
+    public void onLogin(String username, S source, LoginDeadline deadline) {
+        AsyncScheduler scheduler = core.getPlugin().getScheduler();
+
+        // stored profiles don't need a Mojang request, so don't let them wait behind a flood of unknown names
+        Executor executor;
+        if (core.isKnownName(username)) {
+            executor = scheduler.getPriorityExecutor();
+        } else {
+            executor = scheduler.getExecutor(WorkKind.BLOCKING);
         }
 
+        onLoginAsync(username, source, deadline, executor).join();
+    }
+
+    /**
+     * Handle the login without blocking the calling thread. The Mojang lookup doesn't occupy a thread at all, so the
+     * number of concurrent logins isn't limited by the number of threads.
+     *
+     * @param username requested name
+     * @param source connection of the player
+     * @param deadline started on the arrival of the login packet - expired or cancelled logins are abandoned before
+     *                 each expensive step
+     * @param executor runs the blocking database and auth plugin calls and the platform callbacks
+     * @return completes after the login is handled. Errors are already handled, so it doesn't fail.
+     * @throws RejectedExecutionException if the profile stage is saturated
+     */
+    public CompletableFuture<Void> onLoginAsync(String username, S source, LoginDeadline deadline,
+                                                Executor executor) {
+        if (isAbandoned(username, deadline)) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        core.getPlugin().getLog().info("Handling player {}", username);
+        LoginPipeline pipeline = core.getPipeline();
+        CompletableFuture<StoredProfile> loaded = pipeline.get(Stage.PROFILE)
+                .supply(() -> core.getStorage().loadProfile(username), executor);
+        return track(source, loaded)
+                .thenCompose(profile -> {
+                    if (profile == null || isAbandoned(username, deadline)) {
+                        return CompletableFuture.completedFuture(null);
+                    }
+
+                    CompletableFuture<Void> result;
+                    try {
+                        result = checkProfile(username, source, profile, deadline, executor);
+                    } catch (RuntimeException ex) {
+                        result = failedFuture(ex);
+                    }
+
+                    return result.exceptionally(error -> {
+                        onFailure(username, source, profile, deadline, unwrap(error));
+                        return null;
+                    });
+                })
+                .exceptionally(error -> {
+                    if (unwrap(error) instanceof CancellationException) {
+                        core.getPlugin().getLog().debug("Login of {} cancelled - the connection closed", username);
+                    } else {
+                        core.getPlugin().getLog().error("Failed to check premium state of {}", username, error);
+                    }
+
+                    return null;
+                });
+    }
+
+    private CompletableFuture<Void> checkProfile(String username, S source, StoredProfile profile,
+                                                 LoginDeadline deadline, Executor executor) {
         callFastLoginPreLoginEvent(username, source, profile);
 
         Configuration config = core.getConfig();
 
         String ip = source.getAddress().getAddress().getHostAddress();
         profile.setLastIp(ip);
-        try {
-            if (profile.isSaved()) {
-                if (profile.isPremium()) {
-                    core.getPlugin().getLog().info("Requesting premium login for registered player: {}", username);
-                    requestPremiumLogin(source, profile, username, true);
-                } else {
-                    startCrackedSession(source, profile, username);
-                }
-            } else {
-                if (core.getPendingLogin().remove(ip + username) != null && config.get("secondAttemptCracked", false)) {
-                    core.getPlugin().getLog().info("Second attempt login -> cracked {}", username);
-
-                    //first login request failed so make a cracked session
-                    startCrackedSession(source, profile, username);
-                    return;
-                }
-
-                Optional<Profile> premiumUUID = Optional.empty();
-                if (config.get("nameChangeCheck", false) || config.get("autoRegister", false)) {
-                    premiumUUID = core.getResolver().findProfile(username);
-                }
-
-                if (!premiumUUID.isPresent()
-                        || (!checkNameChange(source, username, premiumUUID.get())
-                        && !checkPremiumName(source, username, profile))) {
-                    //nothing detected the player as premium -> start a cracked session
-                    if (core.getConfig().get("switchMode", false)) {
-                        source.kick(core.getMessage("switch-kick-message"));
-                        return;
-                    }
+        if (profile.isSaved()) {
+            if (profile.isPremium()) {
+                core.getPlugin().getLog().info("Requesting premium login for registered player: {}", username);
+                return requestPremium(source, profile, username, true, executor);
+            }
+
+            startCrackedSession(source, profile, username);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        if (core.getPendingLogin().remove(ip + username) != null && config.get("secondAttemptCracked", false)) {
+            core.getPlugin().getLog().info("Second attempt login -> cracked {}", username);
 
-                    startCrackedSession(source, profile, username);
-                }
+            //first login request failed so make a cracked session
+            startCrackedSession(source, profile, username);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        if (!config.get("nameChangeCheck", false) && !config.get("autoRegister", false)) {
+            onCracked(source, profile, username);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        if (isAbandoned(username, deadline)) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        // a slow Mojang API only fills its own stage. The following database step runs on the executor instead of
+        // the I/O thread of the http client
+        LoginPipeline pipeline = core.getPipeline();
+        return track(source, pipeline.get(Stage.MOJANG).compose(() -> findProfile(username), executor))
+                .<CompletableFuture<Optional<Profile>>>handle((premiumUUID, error) -> error == null
+                        ? CompletableFuture.completedFuture(premiumUUID)
+                        : deferLookup(source, username, deadline, unwrap(error), executor))
+                .thenCompose(Function.identity())
+                .thenCompose(premiumUUID -> track(source, pipeline.get(Stage.PROFILE).supply(() ->
+                        checkPremium(username, source, profile, deadline, premiumUUID), executor)))
+                // the profile slot is free again, while the request waits for a slot of the encryption stage
+                .thenCompose(request -> request == null
+                        ? CompletableFuture.<Void>completedFuture(null)
+                        : requestPremium(source, request.profile, username, request.registered, executor));
+    }
+
+    /**
+     * @return the premium login to request or null if a cracked session was started or the login was abandoned
+     */
+    private PremiumRequest checkPremium(String username, S source, StoredProfile profile, LoginDeadline deadline,
+                                        Optional<Profile> premiumUUID) {
+        if (isAbandoned(username, deadline)) {
+            return null;
+        }
+
+        if (!premiumUUID.isPresent()) {
+            onCracked(source, profile, username);
+            return null;
+        }
+
+        PremiumRequest request = checkNameChange(username, premiumUUID.get());
+        if (request == null) {
+            request = checkPremiumName(username, profile);
+        }
+
+        if (request == null) {
+            //nothing detected the player as premium -> start a cracked session
+            onCracked(source, profile, username);
+        }
+
+        return request;
+    }
+
+    private void onCracked(S source, StoredProfile profile, String username) {
+        if (core.getConfig().get("switchMode", false)) {
+            try {
+                source.kick(core.getMessage("switch-kick-message"));
+            } catch (Exception ex) {
+                throw new CompletionException(ex);
             }
-        } catch (RateLimitException rateLimitEx) {
-            core.getPlugin().getLog().error("Mojang's rate limit reached for {}. The public IPv4 address of this" +
-                    " server issued more than 600 Name -> UUID requests within 10 minutes. After those 10" +
-                    " minutes we can make requests again.", username);
-        } catch (Exception ex) {
-            core.getPlugin().getLog().error("Failed to check premium state for {}", username, ex);
-            core.getPlugin().getLog().error("Failed to check premium state of {}", username, ex);
+
+            return;
         }
+
+        startCrackedSession(source, profile, username);
     }
 
-    private boolean checkPremiumName(S source, String username, StoredProfile profile) throws Exception {
-        core.getPlugin().getLog().info("GameProfile {} uses a premium username", username);
-        if (core.getConfig().get("autoRegister", false) && (authHook == null || !authHook.isRegistered(username))) {
-            requestPremiumLogin(source, profile, username, false);
+    private void onFailure(String username, S source, StoredProfile profile, LoginDeadline deadline, Throwable error) {
+        Configuration config = core.getConfig();
+        if (error instanceof CancellationException) {
+            core.getPlugin().getLog().debug("Premium check of {} cancelled - the connection closed", username);
+        } else if (error instanceof RejectedExecutionException) {
+            // the stage already reports the number of rejections
+            try {
+                source.kick(core.getMessage("server-busy"));
+            } catch (Exception ex) {
+                core.getPlugin().getLog().error("Failed to kick {}", username, ex);
+            }
+        } else if (error instanceof CircuitOpenException) {
+            core.getPlugin().getLog().warn("Mojang API is unavailable. Skipping premium check for {}", username);
+            String policy = config.getString("circuit-breaker.open-policy", "kick");
+            onMojangUnavailable(source, profile, username, policy, "mojang-unavailable");
+        } else if (error instanceof RateLimitReachedException) {
+            if (isAbandoned(username, deadline)) {
+                return;
+            }
+
+            core.getPlugin().getLog().error("Mojang's rate limit reached for {}. All public IPv4 addresses and" +
+                    " proxies of this server issued more than the allowed Name -> UUID requests within 10 minutes." +
+                    " After those 10 minutes we can make requests again.", username);
+            String policy = config.getString("rate-limit-queue.fallback", "kick");
+            onMojangUnavailable(source, profile, username, policy, "rate-limited");
+        } else {
+            core.getPlugin().getLog().error("Failed to check premium state for {}", username, error);
+        }
+    }
+
+    private void onMojangUnavailable(S source, StoredProfile profile, String username, String policy,
+                                     String kickMessage) {
+        if ("kick".equalsIgnoreCase(policy)) {
+            try {
+                source.kick(core.getMessage(kickMessage));
+            } catch (Exception ex) {
+                core.getPlugin().getLog().error("Failed to kick {}", username, ex);
+            }
+
+            return;
+        }
+
+        // the player could still own a paid account, so this decision must not be stored
+        core.getPlugin().getLog().info("Starting a temporary cracked session for {}", username);
+        startCrackedSession(source, profile, username).setFallback(true);
+    }
+
+    /**
+     * Let the platform cancel the queued or running steps of this login, if the connection closes.
+     *
+     * @param source connection of the login
+     * @param future pending step
+     * @param <T> result type
+     * @return the same future
+     */
+    protected <T> CompletableFuture<T> track(S source, CompletableFuture<T> future) {
+        return future;
+    }
+
+    private boolean isAbandoned(String username, LoginDeadline deadline) {
+        if (deadline.isCancelled()) {
+            core.getPlugin().getLog().debug("Abandoning login of {} - the connection closed", username);
             return true;
         }
 
-        return false;
+        if (!deadline.isExpired()) {
+            return false;
+        }
+
+        core.getAdmission().markExpired();
+        core.getPlugin().getLog().debug("Abandoning login of {} after {} ms - the client most likely gave up",
+                username, deadline.getElapsed());
+        return true;
     }
 
-    private boolean checkNameChange(S source, String username, Profile profile) {
+    private CompletableFuture<Optional<Profile>> findProfile(String username) {
+        NegativeProfileCache negativeCache = core.getNegativeCache();
+        if (negativeCache != null && negativeCache.contains(username)) {
+            core.getPlugin().getLog().debug("Skipping Mojang request for recently unknown name {}", username);
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+
+        return core.getApiConnector().findProfileAsync(username).thenApply(profile -> remember(username, profile));
+    }
+
+    /**
+     * Wait for the rate-limit in a stage of its own, so the waiting lookups don't block the slots of new lookups.
+     */
+    private CompletableFuture<Optional<Profile>> deferLookup(S source, String username, LoginDeadline deadline,
+                                                             Throwable cause, Executor executor) {
+        DeferredLookupQueue retryQueue = core.getApiConnector().getRetryQueue();
+        if (!(cause instanceof RateLimitReachedException) || retryQueue == null) {
+            return failedFuture(cause);
+        }
+
+        // don't wait longer than the client - the fallback policy still needs to reach it
+        long wait = deadline.getRemaining() - FALLBACK_MARGIN;
+        if (wait <= 0) {
+            return failedFuture(cause);
+        }
+
+        core.getPlugin().getLog().info("Rate limit reached. Waiting for it to free up for {}", username);
+        LoginStage stage = core.getPipeline().get(Stage.RATE_LIMIT);
+        return track(source, stage.compose(() -> retryQueue.submit(username, wait), executor))
+                .thenApply(profile -> remember(username, profile));
+    }
+
+    private Optional<Profile> remember(String username, Optional<Profile> profile) {
+        NegativeProfileCache negativeCache = core.getNegativeCache();
+        if (!profile.isPresent() && negativeCache != null) {
+            negativeCache.add(username);
+        }
+
+        return profile;
+    }
+
+    private PremiumRequest checkPremiumName(String username, StoredProfile profile) {
+        core.getPlugin().getLog().info("GameProfile {} uses a premium username", username);
+        if (!core.getConfig().get("autoRegister", false)) {
+            return null;
+        }
+
+        // we are already on the executor for blocking calls
+        boolean registered;
+        try {
+            registered = authHook != null && authHook.isRegistered(username);
+        } catch (Exception ex) {
+            throw new CompletionException(ex);
+        }
+
+        if (registered) {
+            return null;
+        }
+
+        return new PremiumRequest(profile, false);
+    }
+
+    private PremiumRequest checkNameChange(String username, Profile profile) {
         //user not exists in the db
         if (core.getConfig().get("nameChangeCheck", false)) {
             StoredProfile storedProfile = core.getStorage().loadProfile(profile.getId());
@@ -123,17 +380,52 @@ public abstract class JoinManagement<P extends C, C, S extends LoginSource> {
                 //update the username to the new one in the database
                 storedProfile.setPlayerName(username);
 
-                requestPremiumLogin(source, storedProfile, username, false);
-                return true;
+                return new PremiumRequest(storedProfile, false);
             }
         }
 
-        return false;
+        return null;
+    }
+
+    private CompletableFuture<Void> requestPremium(S source, StoredProfile profile, String username,
+                                                   boolean registered, Executor executor) {
+        LoginStage stage = core.getPipeline().get(Stage.ENCRYPTION);
+        return track(source, stage.supply(() -> {
+            requestPremiumLogin(source, profile, username, registered);
+            return null;
+        }, executor));
+    }
+
+    private static <T> CompletableFuture<T> failedFuture(Throwable error) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(error);
+        return future;
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
     }
 
     public abstract FastLoginPreLoginEvent callFastLoginPreLoginEvent(String username, S source, StoredProfile profile);
 
     public abstract void requestPremiumLogin(S source, StoredProfile profile, String username, boolean registered);
 
-    public abstract void startCrackedSession(S source, StoredProfile profile, String username);
+    /**
+     * @return the started session
+     */
+    public abstract LoginSession startCrackedSession(S source, StoredProfile profile, String username);
+
+    /**
+     * Decision of the profile stage that the player should log in with a premium account.
+     */
+    private static class PremiumRequest {
+
+        private final StoredProfile profile;
+        private final boolean registered;
+
+        PremiumRequest(StoredProfile profile, boolean registered) {
+            this.profile = profile;
+            this.registered = registered;
+        }
+    }
 }
@@ -0,0 +1,81 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2021 <Your name and contributors>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.shared;
+
+import com.github.games647.fastlogin.core.MonotonicClock;
+
+/**
+ * Point in time after which the client most likely gave up waiting for the login packet. Work for such a login is
+ * wasted, because the client already disconnected. It's cancelled earlier if the connection is known to be closed.
+ */
+public class LoginDeadline {
+
+    private final long started;
+    private final long deadline;
+
+    private volatile boolean cancelled;
+
+    /**
+     * @param timeout milliseconds from now or a value below 1 for no deadline
+     */
+    public LoginDeadline(long timeout) {
+        this.started = MonotonicClock.SYSTEM.millis();
+        this.deadline = timeout > 0 ? started + timeout : Long.MAX_VALUE;
+    }
+
+    public boolean isExpired() {
+        return MonotonicClock.SYSTEM.millis() >= deadline;
+    }
+
+    /**
+     * Abandon the login immediately, because the connection closed.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return milliseconds until the deadline - 0 if it's expired
+     */
+    public long getRemaining() {
+        if (deadline == Long.MAX_VALUE) {
+            return Long.MAX_VALUE;
+        }
+
+        return Math.max(0, deadline - MonotonicClock.SYSTEM.millis());
+    }
+
+    /**
+     * @return milliseconds since the packet arrived
+     */
+    public long getElapsed() {
+        return MonotonicClock.SYSTEM.millis() - started;
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2021 <Your name and contributors>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.shared;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import net.md_5.bungee.config.Configuration;
+
+import org.slf4j.Logger;
+
+/**
+ * The steps of a login, each with its own {@link LoginStage}. This way a slow Mojang API only fills the queue of the
+ * lookups, while the verification of players that already received the encryption request continues.
+ */
+public class LoginPipeline {
+
+    public enum Stage {
+
+        /**
+         * Database queries for the stored profile and the auth plugin checks
+         */
+        PROFILE("profile", 16, 512),
+
+        /**
+         * Name to UUID lookups
+         */
+        MOJANG("mojang", 64, 512),
+
+        /**
+         * Lookups waiting for the rate limit to free up. They don't occupy a thread, so many of them can wait.
+         */
+        RATE_LIMIT("rate-limit", 256, 512),
+
+        /**
+         * Sending the encryption request to premium players
+         */
+        ENCRYPTION("encryption", 16, 512),
+
+        /**
+         * Decryption of the encryption response
+         */
+        VERIFY("verify", 8, 512),
+
+        /**
+         * Session server requests of premium players
+         */
+        SESSION("session", 64, 512),
+
+        /**
+         * Auto register and login in the auth plugin after the join
+         */
+        FORCE_LOGIN("force-login", 8, 512);
+
+        private final String key;
+        private final int defaultConcurrency;
+        private final int defaultCapacity;
+
+        Stage(String key, int defaultConcurrency, int defaultCapacity) {
+            this.key = key;
+            this.defaultConcurrency = defaultConcurrency;
+            this.defaultCapacity = defaultCapacity;
+        }
+
+        public String getKey() {
+            return key;
+        }
+    }
+
+    private final Logger logger;
+    private final Map<Stage, LoginStage> stages = new EnumMap<>(Stage.class);
+
+    // finished tasks, total wait and total service time at the last report
+    private final Map<Stage, long[]> lastReport = new EnumMap<>(Stage.class);
+
+    /**
+     * @param logger logger for saturation warnings and reports
+     * @param config plugin config with the limits of each stage
+     */
+    public LoginPipeline(Logger logger, Configuration config) {
+        this.logger = logger;
+        for (Stage stage : Stage.values()) {
+            int concurrency = config.getInt("login-stages." + stage.key + ".concurrency", stage.defaultConcurrency);
+            int capacity = config.getInt("login-stages." + stage.key + ".queue", stage.defaultCapacity);
+            stages.put(stage, new LoginStage(stage.key, logger, concurrency, capacity));
+            lastReport.put(stage, new long[3]);
+        }
+    }
+
+    public LoginStage get(Stage stage) {
+        return stages.get(stage);
+    }
+
+    /**
+     * Log the queue depth and the average latencies of every stage since the last report.
+     */
+    public synchronized void report() {
+        for (Stage stage : Stage.values()) {
+            LoginStage loginStage = stages.get(stage);
+            long finished = loginStage.getCompleted() + loginStage.getFailed();
+            long wait = loginStage.getTotalWait();
+            long service = loginStage.getTotalService();
+
+            long[] last = lastReport.get(stage);
+            long count = finished - last[0];
+            long avgWait = count == 0 ? 0 : (wait - last[1]) / count;
+            long avgService = count == 0 ? 0 : (service - last[2]) / count;
+            last[0] = finished;
+            last[1] = wait;
+            last[2] = service;
+
+            logger.info("Login stage {}: {} tasks, avg wait {} ms, avg time {} ms, {}/{} running, {}/{} waiting, "
+                            + "{} rejected in total", stage.key, count, avgWait, avgService,
+                    loginStage.getActive(), loginStage.getConcurrency(),
+                    loginStage.getQueued(), loginStage.getCapacity(), loginStage.getRejected());
+        }
+    }
+}
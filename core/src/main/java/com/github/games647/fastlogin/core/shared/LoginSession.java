@@ -39,6 +39,7 @@ public abstract class LoginSession {
     private UUID uuid;
 
     protected boolean registered;
+    private boolean fallback;
 
     public LoginSession(String requestUsername, boolean registered, StoredProfile profile) {
         this.requestUsername = requestUsername;
@@ -89,6 +90,18 @@ public abstract class LoginSession {
         this.uuid = uuid;
     }
 
+    /**
+     * @return true if this cracked session was only started, because Mojang was unavailable. The premium state of the
+     * player is unknown in this case.
+     */
+    public synchronized boolean isFallback() {
+        return fallback;
+    }
+
+    public synchronized void setFallback(boolean fallback) {
+        this.fallback = fallback;
+    }
+
     @Override
     public synchronized String toString() {
         return Objects.toStringHelper(this)
@@ -97,6 +110,7 @@ public abstract class LoginSession {
                 .add("username", username)
                 .add("uuid", uuid)
                 .add("registered", registered)
+                .add("fallback", fallback)
                 .toString();
     }
 }
@@ -0,0 +1,319 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2021 <Your name and contributors>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.shared;
+
+import com.github.games647.fastlogin.core.RejectionWarning;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+
+/**
+ * One step of the login process with its own bounded queue and concurrency limit. A slot is held until the returned
+ * future of a task completes, so it also limits non-blocking work like HTTP requests. If one step is saturated, only
+ * the tasks of this step wait or get rejected, while the other steps keep their capacity.
+ */
+public class LoginStage {
+
+    private final String name;
+    private final Logger logger;
+    private final int concurrency;
+    private final int capacity;
+
+    private final Queue<Entry<?>> queue = new ArrayDeque<>();
+    private int active;
+
+    private long completed;
+    private long failed;
+    private long rejected;
+    private int maxQueued;
+
+    // nano seconds
+    private long totalWait;
+    private long totalService;
+
+    private final RejectionWarning rejectionWarning;
+
+    /**
+     * @param name        name of the stage for reports
+     * @param logger      logger for rejection summaries
+     * @param concurrency maximum number of tasks that run at the same time
+     * @param capacity    maximum number of waiting tasks
+     */
+    public LoginStage(String name, Logger logger, int concurrency, int capacity) {
+        this.name = name;
+        this.logger = logger;
+        this.rejectionWarning = new RejectionWarning(logger);
+        this.concurrency = Math.max(1, concurrency);
+        this.capacity = Math.max(0, capacity);
+    }
+
+    /**
+     * Run a blocking task in this stage.
+     *
+     * @param task the task
+     * @param executor thread pool for the task
+     * @return future of the task
+     * @throws RejectedExecutionException if the queue of this stage is full
+     */
+    public CompletableFuture<Void> run(Runnable task, Executor executor) {
+        return this.<Void>supply(() -> {
+            task.run();
+            return null;
+        }, executor).exceptionally(error -> {
+            logger.warn("Error occurred in login stage {}", name, error);
+            return null;
+        });
+    }
+
+    /**
+     * Run a blocking task in this stage.
+     *
+     * @param task the task
+     * @param executor thread pool for the task
+     * @param <T> result type
+     * @return future of the result
+     * @throws RejectedExecutionException if the queue of this stage is full
+     */
+    public <T> CompletableFuture<T> supply(Supplier<T> task, Executor executor) {
+        return compose(() -> CompletableFuture.completedFuture(task.get()), executor);
+    }
+
+    /**
+     * Start a non-blocking task in this stage. The slot is only released after the returned future of the task
+     * completes. Cancelling the returned future also cancels the future of the task or drops it from the queue.
+     *
+     * @param task starts the work
+     * @param executor thread pool that starts the task
+     * @param <T> result type
+     * @return future of the result
+     * @throws RejectedExecutionException if the queue of this stage is full
+     */
+    public <T> CompletableFuture<T> compose(Supplier<? extends CompletionStage<T>> task, Executor executor) {
+        Entry<T> entry = new Entry<>(task, executor);
+        synchronized (this) {
+            if (active >= concurrency) {
+                if (queue.size() >= capacity) {
+                    rejected++;
+                    warnRejected();
+                    throw new RejectedExecutionException("Login stage " + name + " is saturated");
+                }
+
+                queue.add(entry);
+                maxQueued = Math.max(maxQueued, queue.size());
+                entry.result.whenComplete((result, error) -> {
+                    if (entry.result.isCancelled()) {
+                        dequeue(entry);
+                    }
+                });
+
+                return entry.result;
+            }
+
+            active++;
+        }
+
+        try {
+            start(entry);
+        } catch (RejectedExecutionException rejectedEx) {
+            synchronized (this) {
+                rejected++;
+            }
+
+            onFinish();
+            throw rejectedEx;
+        }
+
+        return entry.result;
+    }
+
+    private <T> void start(Entry<T> entry) {
+        entry.executor.execute(() -> {
+            long started = System.nanoTime();
+            if (entry.result.isDone()) {
+                // cancelled by the caller in the meantime
+                onFinish();
+                return;
+            }
+
+            CompletableFuture<T> future;
+            try {
+                future = entry.task.get().toCompletableFuture();
+            } catch (Exception ex) {
+                future = new CompletableFuture<>();
+                future.completeExceptionally(ex);
+            }
+
+            CompletableFuture<T> taskFuture = future;
+            entry.result.whenComplete((result, error) -> {
+                if (entry.result.isCancelled()) {
+                    taskFuture.cancel(false);
+                }
+            });
+
+            future.whenComplete((result, error) -> {
+                long finished = System.nanoTime();
+                synchronized (this) {
+                    totalWait += started - entry.queued;
+                    totalService += finished - started;
+                    if (error == null) {
+                        completed++;
+                    } else {
+                        failed++;
+                    }
+                }
+
+                // start the next one before running the continuations of this one
+                onFinish();
+                if (error == null) {
+                    entry.result.complete(result);
+                } else {
+                    entry.result.completeExceptionally(error);
+                }
+            });
+        });
+    }
+
+    private synchronized void dequeue(Entry<?> entry) {
+        queue.remove(entry);
+    }
+
+    private void onFinish() {
+        while (true) {
+            Entry<?> next;
+            synchronized (this) {
+                next = queue.poll();
+                if (next == null) {
+                    active--;
+                    return;
+                }
+            }
+
+            try {
+                // the slot is handed over to the next task
+                start(next);
+                return;
+            } catch (RejectedExecutionException rejectedEx) {
+                synchronized (this) {
+                    rejected++;
+                }
+
+                next.result.completeExceptionally(rejectedEx);
+            }
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized int getActive() {
+        return active;
+    }
+
+    public synchronized int getQueued() {
+        return queue.size();
+    }
+
+    /**
+     * @return the highest number of waiting tasks since the start
+     */
+    public synchronized int getMaxQueued() {
+        return maxQueued;
+    }
+
+    public synchronized long getCompleted() {
+        return completed;
+    }
+
+    public synchronized long getFailed() {
+        return failed;
+    }
+
+    public synchronized long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * @return total time in milliseconds the finished tasks waited in the queue
+     */
+    public synchronized long getTotalWait() {
+        return totalWait / 1_000_000;
+    }
+
+    /**
+     * @return total time in milliseconds the finished tasks held a slot
+     */
+    public synchronized long getTotalService() {
+        return totalService / 1_000_000;
+    }
+
+    private void warnRejected() {
+        rejectionWarning.warn(rejected, "Login stage {} saturated ({} running, {} waiting)", name, active,
+                queue.size());
+    }
+
+    @Override
+    public synchronized String toString() {
+        return this.getClass().getSimpleName() + '{' +
+                "name='" + name + '\'' +
+                ", active=" + active + '/' + concurrency +
+                ", queued=" + queue.size() + '/' + capacity +
+                ", completed=" + completed +
+                ", failed=" + failed +
+                ", rejected=" + rejected +
+                '}';
+    }
+
+    private static class Entry<T> {
+
+        private final Supplier<? extends CompletionStage<T>> task;
+        private final Executor executor;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+
+        // nano seconds
+        private final long queued = System.nanoTime();
+
+        Entry(Supplier<? extends CompletionStage<T>> task, Executor executor) {
+            this.task = task;
+            this.executor = executor;
+        }
+    }
+}
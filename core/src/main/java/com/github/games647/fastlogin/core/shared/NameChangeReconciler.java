@@ -0,0 +1,119 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2021 <Your name and contributors>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.shared;
+
+import com.github.games647.fastlogin.core.AuthStorage;
+import com.github.games647.fastlogin.core.StoredProfile;
+import com.github.games647.fastlogin.core.mojang.CircuitOpenException;
+import com.github.games647.fastlogin.core.mojang.MojangApiConnector;
+import com.github.games647.fastlogin.core.mojang.RateLimitReachedException;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+
+/**
+ * Background job that looks up the current names of premium players, starting with the ones that didn't join for the
+ * longest time. Renamed players are updated ahead of time, so their next login is a plain database lookup instead of
+ * a Mojang request while the player waits.
+ *
+ * Each run checks a batch of players, but only using spare requests of the rate-limit. It continues where the last run
+ * stopped and starts again from the beginning once all players are checked.
+ */
+public class NameChangeReconciler implements Runnable {
+
+    private final AuthStorage storage;
+    private final MojangApiConnector connector;
+    private final Logger logger;
+
+    private final int batchSize;
+    private final int reservedRequests;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private int offset;
+
+    /**
+     * @param batchSize maximum number of players checked in one run
+     * @param reservedRequests number of requests per address that should remain for logins
+     */
+    public NameChangeReconciler(AuthStorage storage, MojangApiConnector connector, Logger logger,
+                                int batchSize, int reservedRequests) {
+        this.storage = storage;
+        this.connector = connector;
+        this.logger = logger;
+        this.batchSize = batchSize;
+        this.reservedRequests = reservedRequests;
+    }
+
+    @Override
+    public void run() {
+        // skip it if the previous run is still in progress
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            List<StoredProfile> batch = storage.loadPremiumByLastLogin(offset, batchSize);
+            if (batch.isEmpty()) {
+                offset = 0;
+                return;
+            }
+
+            for (StoredProfile profile : batch) {
+                try {
+                    connector.findName(profile.getId(), reservedRequests)
+                            .ifPresent(currentName -> updateName(profile, currentName));
+                } catch (RateLimitReachedException | CircuitOpenException ex) {
+                    // continue with this profile next time
+                    logger.debug("Pausing name change check: {}", ex.getMessage());
+                    return;
+                } catch (IOException ioEx) {
+                    logger.debug("Failed to look up the current name of {}", profile, ioEx);
+                }
+
+                offset++;
+            }
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private void updateName(StoredProfile profile, String currentName) {
+        String storedName = profile.getName();
+        if (currentName.equals(storedName)) {
+            return;
+        }
+
+        profile.setPlayerName(currentName);
+        if (storage.updateName(profile)) {
+            logger.info("GameProfile {} changed it's username from {} to {}", profile.getId(), storedName,
+                    currentName);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2021 <Your name and contributors>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core;
+
+import com.github.games647.fastlogin.core.HashedWheelTimer.Timeout;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class HashedWheelTimerTest {
+
+    // small wheel, so the tests also cover tasks that need multiple rounds
+    private final HashedWheelTimer timer = new HashedWheelTimer(LoggerFactory.getLogger(getClass()),
+            Executors.defaultThreadFactory(), 5, TimeUnit.MILLISECONDS, 8);
+
+    @After
+    public void tearDown() {
+        timer.stop();
+    }
+
+    @Test
+    public void runAfterDelay() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+
+        long start = System.nanoTime();
+        Timeout timeout = timer.schedule(latch::countDown, 100, TimeUnit.MILLISECONDS);
+        assertTrue("Task should run", latch.await(1, TimeUnit.SECONDS));
+
+        assertTrue("Task ran too early", System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+        assertTrue(timeout.isExpired());
+        assertFalse("Expired tasks cannot be cancelled", timeout.cancel());
+    }
+
+    @Test
+    public void cancel() throws InterruptedException {
+        AtomicInteger runs = new AtomicInteger();
+        Timeout timeout = timer.schedule(runs::incrementAndGet, 50, TimeUnit.MILLISECONDS);
+        assertTrue(timeout.cancel());
+
+        Thread.sleep(150);
+        assertEquals(0, runs.get());
+        assertTrue(timeout.isCancelled());
+    }
+
+    @Test
+    public void fixedRate() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(3);
+        Timeout timeout = timer.scheduleAtFixedRate(latch::countDown, 0, 20, TimeUnit.MILLISECONDS);
+
+        assertTrue("Task should repeat", latch.await(1, TimeUnit.SECONDS));
+        assertTrue(timeout.cancel());
+    }
+
+    @Test
+    public void expireMapEntries() throws InterruptedException {
+        ConcurrentMap<String, String> map = new ExpiringMap<>(timer, 50, TimeUnit.MILLISECONDS);
+        map.put("expire", "value");
+        assertEquals("value", map.get("expire"));
+
+        Thread.sleep(150);
+        assertNull("Entry should be expired", map.get("expire"));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void removeMapEntriesThroughViews() {
+        ConcurrentMap<String, String> map = new ExpiringMap<>(timer, 1, TimeUnit.MINUTES);
+        map.put("a", "1");
+        map.put("b", "2");
+        map.put("c", "3");
+
+        assertTrue(map.keySet().removeIf("a"::equals));
+        assertTrue(map.values().removeIf("2"::equals));
+        assertEquals(Collections.singletonMap("c", "3"), map);
+
+        Iterator<Map.Entry<String, String>> iterator = map.entrySet().iterator();
+        iterator.next();
+        iterator.remove();
+        assertTrue(map.isEmpty());
+    }
+}
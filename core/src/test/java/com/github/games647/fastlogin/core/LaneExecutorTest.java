@@ -0,0 +1,78 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2021 <Your name and contributors>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LaneExecutorTest {
+
+    @Test
+    public void priorityFirst() throws InterruptedException {
+        ExecutorService delegate = Executors.newSingleThreadExecutor();
+        try {
+            LaneExecutor lanes = new LaneExecutor(delegate);
+
+            // occupy the only thread until everything is queued
+            CountDownLatch blocked = new CountDownLatch(1);
+            lanes.execute(() -> {
+                try {
+                    blocked.await();
+                } catch (InterruptedException interruptedEx) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+
+            List<String> order = new CopyOnWriteArrayList<>();
+            CountDownLatch finished = new CountDownLatch(4);
+            lanes.execute(() -> run(order, "unknown-1", finished));
+            lanes.execute(() -> run(order, "unknown-2", finished));
+            lanes.executePriority(() -> run(order, "known-1", finished));
+            lanes.executePriority(() -> run(order, "known-2", finished));
+
+            blocked.countDown();
+            assertTrue(finished.await(5, TimeUnit.SECONDS));
+            assertEquals(Arrays.asList("known-1", "known-2", "unknown-1", "unknown-2"), order);
+        } finally {
+            delegate.shutdownNow();
+        }
+    }
+
+    private static void run(List<String> order, String name, CountDownLatch finished) {
+        order.add(name);
+        finished.countDown();
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2021 <Your name and contributors>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core;
+
+import org.junit.Test;
+import org.slf4j.helpers.NOPLogger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LoginAdmissionTest {
+
+    /**
+     * Reject above the limit until a slot is released
+     */
+    @Test
+    public void rejectWhenSaturated() {
+        int size = 3;
+
+        LoginAdmission admission = new LoginAdmission(NOPLogger.NOP_LOGGER, size);
+        for (int i = 0; i < size; i++) {
+            assertTrue("Filling up", admission.tryAdmit());
+        }
+
+        assertFalse("Should be saturated", admission.tryAdmit());
+        assertEquals(1, admission.getRejected());
+
+        admission.release();
+        assertTrue("Slot should be free again", admission.tryAdmit());
+        assertEquals(size + 1, admission.getAdmitted());
+        assertEquals(size, admission.getInFlight());
+    }
+
+    /**
+     * No limit configured
+     */
+    @Test
+    public void disabled() {
+        LoginAdmission admission = new LoginAdmission(NOPLogger.NOP_LOGGER, 0);
+        for (int i = 0; i < 1_000; i++) {
+            assertTrue(admission.tryAdmit());
+        }
+
+        assertEquals(0, admission.getRejected());
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2021 <Your name and contributors>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.helpers.NOPLogger;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteDataSource;
+
+import static org.junit.Assert.assertEquals;
+
+public class QuotaStorageTest {
+
+    private static final String EGRESS = "default";
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private File database;
+    private QuotaStorage storage;
+
+    @Before
+    public void setUp() throws Exception {
+        database = folder.newFile("quota.db");
+        storage = newServer(database);
+        storage.createTable();
+    }
+
+    @Test
+    public void leaseUpToLimit() {
+        assertEquals(20, storage.lease(EGRESS, 1, -10, 20, 50));
+        assertEquals(20, storage.lease(EGRESS, 1, -10, 20, 50));
+        assertEquals("Only the rest", 10, storage.lease(EGRESS, 1, -10, 20, 50));
+        assertEquals(0, storage.lease(EGRESS, 2, -9, 20, 50));
+        assertEquals("Separate quota per egress", 20, storage.lease("other", 2, -9, 20, 50));
+    }
+
+    @Test
+    public void slidingWindow() {
+        assertEquals(10, storage.lease(EGRESS, 5, -5, 10, 10));
+
+        // no fixed window that starts over in between
+        assertEquals(0, storage.lease(EGRESS, 10, 0, 10, 10));
+        assertEquals("Still within the window", 0, storage.lease(EGRESS, 15, 5, 10, 10));
+        assertEquals(10, storage.lease(EGRESS, 16, 6, 10, 10));
+    }
+
+    @Test
+    public void giveBackUnused() {
+        assertEquals(10, storage.lease(EGRESS, 1, -10, 10, 10));
+        storage.giveBack(EGRESS, 1, 4);
+        assertEquals(4, storage.lease(EGRESS, 2, -9, 10, 10));
+    }
+
+    @Test
+    public void exhaustWholeWindow() {
+        assertEquals(2, storage.lease(EGRESS, 1, -10, 2, 10));
+        storage.exhaust(EGRESS, 3, 10);
+        assertEquals(0, storage.lease(EGRESS, 4, -7, 2, 10));
+        assertEquals("Exhausted bucket left the window", 2, storage.lease(EGRESS, 14, 4, 2, 10));
+    }
+
+    @Test
+    public void concurrentLeasing() throws Exception {
+        int servers = 8;
+        int limit = 100;
+
+        ExecutorService threads = Executors.newFixedThreadPool(servers);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Integer>> leased = new ArrayList<>();
+            for (int i = 0; i < servers; i++) {
+                // own connection for every server like separate machines
+                QuotaStorage server = newServer(database);
+                leased.add(threads.submit(() -> {
+                    start.await();
+
+                    int sum = 0;
+                    int granted;
+                    do {
+                        granted = server.lease(EGRESS, 1, -10, 3, limit);
+                        sum += granted;
+                    } while (granted > 0);
+                    return sum;
+                }));
+            }
+
+            start.countDown();
+
+            int sum = 0;
+            for (Future<Integer> future : leased) {
+                sum += future.get(30, TimeUnit.SECONDS);
+            }
+
+            assertEquals(limit, sum);
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+
+    private static QuotaStorage newServer(File database) throws IOException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setBusyTimeout(30_000);
+
+        SQLiteDataSource dataSource = new SQLiteDataSource(config);
+        dataSource.setUrl("jdbc:sqlite:" + database.getCanonicalPath());
+        return new QuotaStorage(dataSource, NOPLogger.NOP_LOGGER);
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2021 <Your name and contributors>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.mojang;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AsyncHttpClientTest {
+
+    // self-signed certificate for 127.0.0.1 and localhost
+    private static final String KEY_STORE = "/localhost.jks";
+    private static final char[] KEY_STORE_PASSWORD = "changeit".toCharArray();
+
+    private MojangStandInServer server;
+    private AsyncHttpClient client;
+    private ExecutorService executor;
+    private final AtomicInteger offloaded = new AtomicInteger();
+
+    @Before
+    public void setUp() throws IOException, GeneralSecurityException {
+        KeyStore keyStore = KeyStore.getInstance("JKS");
+        try (InputStream in = getClass().getResourceAsStream(KEY_STORE)) {
+            keyStore.load(in, KEY_STORE_PASSWORD);
+        }
+
+        KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagers.init(keyStore, KEY_STORE_PASSWORD);
+        SSLContext serverContext = SSLContext.getInstance("TLS");
+        serverContext.init(keyManagers.getKeyManagers(), null, null);
+
+        // trust only this certificate
+        TrustManagerFactory trustManagers = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagers.init(keyStore);
+        SSLContext clientContext = SSLContext.getInstance("TLS");
+        clientContext.init(null, trustManagers.getTrustManagers(), null);
+
+        server = new MojangStandInServer(serverContext);
+        client = new AsyncHttpClient(Executors.defaultThreadFactory(), clientContext);
+
+        executor = Executors.newCachedThreadPool();
+        client.setExecutor(task -> {
+            offloaded.incrementAndGet();
+            executor.execute(task);
+        });
+    }
+
+    @After
+    public void tearDown() {
+        client.close();
+        server.close();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void reuseTlsConnection() throws Exception {
+        server.addProfile("Notch");
+        URI uri = URI.create(server.getUrl() + "/users/profiles/minecraft/Notch");
+
+        for (int i = 0; i < 3; i++) {
+            HttpResponse response = client.get(uri, 5_000).get();
+            assertEquals(200, response.getStatusCode());
+            assertTrue(response.getBodyLength() > 0);
+        }
+
+        assertEquals("The TLS handshake should be made once", 1, client.getOpenedConnections());
+        assertEquals(2, client.getReusedConnections());
+    }
+
+    @Test
+    public void resolveAndHandshakeOnExecutor() throws Exception {
+        server.addProfile("Notch");
+        URI uri = URI.create(server.getUrl() + "/users/profiles/minecraft/Notch");
+
+        assertEquals(200, client.get(uri, 5_000).get().getStatusCode());
+        // at least the host lookup and one delegated task of the handshake
+        assertTrue("Blocking work should leave the selector thread", offloaded.get() >= 2);
+    }
+
+    @Test
+    public void rejectUntrustedCertificate() throws Exception {
+        AsyncHttpClient defaultClient = new AsyncHttpClient(Executors.defaultThreadFactory());
+        try {
+            defaultClient.get(URI.create(server.getUrl() + "/users/profiles/minecraft/Notch"), 5_000).get();
+            fail("Self-signed certificate shouldn't be trusted by default");
+        } catch (ExecutionException expected) {
+            assertEquals(1, defaultClient.getOpenedConnections());
+        } finally {
+            defaultClient.close();
+        }
+    }
+
+    @Test
+    public void failAfterClose() {
+        client.close();
+        assertTrue(client.get(URI.create(server.getUrl()), 5_000).isCompletedExceptionally());
+    }
+}
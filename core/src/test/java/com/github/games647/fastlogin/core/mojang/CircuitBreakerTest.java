@@ -0,0 +1,97 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2021 <Your name and contributors>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.mojang;
+
+import com.github.games647.fastlogin.core.mojang.CircuitBreaker.State;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CircuitBreakerTest {
+
+    @Test
+    public void openOnFailureRate() {
+        CircuitBreaker breaker = new CircuitBreaker(4, 50, 1_000, 60_000);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(breaker.tryAcquire());
+            breaker.onFailure();
+            assertEquals("Window not full yet", State.CLOSED, breaker.getState());
+        }
+
+        assertTrue(breaker.tryAcquire());
+        breaker.onSuccess(10);
+        assertEquals(State.OPEN, breaker.getState());
+        assertFalse("Should fail fast", breaker.tryAcquire());
+    }
+
+    @Test
+    public void slowCallsCountAsFailed() {
+        CircuitBreaker breaker = new CircuitBreaker(2, 100, 1_000, 60_000);
+        breaker.tryAcquire();
+        breaker.onSuccess(1_000);
+        breaker.tryAcquire();
+        breaker.onSuccess(2_000);
+        assertEquals(State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void singleProbeAfterOpenDuration() {
+        AtomicLong time = new AtomicLong();
+        CircuitBreaker breaker = new CircuitBreaker(1, 100, 1_000, 30_000, time::get);
+        breaker.tryAcquire();
+        breaker.onFailure();
+        assertEquals(State.OPEN, breaker.getState());
+
+        time.addAndGet(29_999);
+        assertFalse("Still open", breaker.tryAcquire());
+
+        time.addAndGet(1);
+        assertTrue("Probe should be permitted", breaker.tryAcquire());
+        assertFalse("Only a single probe", breaker.tryAcquire());
+
+        breaker.onSuccess(10);
+        assertEquals(State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    public void failedProbeOpensAgain() {
+        AtomicLong time = new AtomicLong();
+        CircuitBreaker breaker = new CircuitBreaker(1, 100, 1_000, 30_000, time::get);
+        breaker.tryAcquire();
+        breaker.onFailure();
+
+        time.addAndGet(30_000);
+        assertTrue(breaker.tryAcquire());
+        breaker.onFailure();
+        assertEquals(State.OPEN, breaker.getState());
+    }
+}
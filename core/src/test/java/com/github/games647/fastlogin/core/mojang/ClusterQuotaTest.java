@@ -0,0 +1,213 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2021 <Your name and contributors>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.mojang;
+
+import com.github.games647.fastlogin.core.QuotaStorage;
+
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.helpers.NOPLogger;
+import org.sqlite.SQLiteDataSource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ClusterQuotaTest {
+
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final AtomicLong time = new AtomicLong(MINUTE / 2);
+    private final AtomicInteger connections = new AtomicInteger();
+    private final List<Runnable> tasks = new ArrayList<>();
+
+    private QuotaStorage storage;
+
+    @Before
+    public void setUp() throws Exception {
+        File database = folder.newFile("quota.db");
+        SQLiteDataSource sqlite = new SQLiteDataSource();
+        sqlite.setUrl("jdbc:sqlite:" + database.getCanonicalPath());
+
+        // count the database queries
+        DataSource dataSource = (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{DataSource.class}, (proxy, method, args) -> {
+                    if ("getConnection".equals(method.getName())) {
+                        connections.incrementAndGet();
+                    }
+
+                    try {
+                        return method.invoke(sqlite, args);
+                    } catch (InvocationTargetException invocationEx) {
+                        throw invocationEx.getCause();
+                    }
+                });
+
+        storage = new QuotaStorage(dataSource, NOPLogger.NOP_LOGGER);
+        storage.createTable();
+    }
+
+    @Test
+    public void acquireWithoutDatabase() {
+        ClusterQuota quota = newQuota(10, 4);
+        int queries = connections.get();
+
+        assertFalse("No lease yet", quota.tryAcquire(Route.DIRECT));
+        assertFalse(quota.tryAcquire(Route.DIRECT));
+        assertEquals("Logins shouldn't wait for the database", queries, connections.get());
+        assertEquals("Single renewal in the background", 1, tasks.size());
+
+        runTasks();
+        for (int i = 0; i < 4; i++) {
+            assertTrue(quota.tryAcquire(Route.DIRECT));
+        }
+
+        assertFalse(quota.tryAcquire(Route.DIRECT));
+    }
+
+    @Test
+    public void renewAheadOfTime() {
+        ClusterQuota quota = newQuota(10, 4);
+        quota.register(Collections.singleton(Route.DIRECT));
+        quota.renew();
+
+        assertTrue(quota.tryAcquire(Route.DIRECT));
+        assertTrue("Tasks only if the lease runs low", tasks.isEmpty());
+        assertTrue(quota.tryAcquire(Route.DIRECT));
+        assertTrue(quota.tryAcquire(Route.DIRECT));
+        assertEquals(1, tasks.size());
+
+        runTasks();
+        for (int i = 0; i < 5; i++) {
+            assertTrue(quota.tryAcquire(Route.DIRECT));
+        }
+    }
+
+    @Test
+    public void shareLimitBetweenServers() {
+        ClusterQuota first = newQuota(10, 4);
+        ClusterQuota second = newQuota(10, 4);
+
+        int acquired = 0;
+        for (int i = 0; i < 20; i++) {
+            for (ClusterQuota quota : new ClusterQuota[]{first, second}) {
+                quota.renew();
+                if (quota.tryAcquire(Route.DIRECT)) {
+                    acquired++;
+                }
+            }
+        }
+
+        assertEquals(10, acquired);
+    }
+
+    @Test
+    public void expireAfterNextBucket() {
+        ClusterQuota quota = newQuota(4, 4);
+        quota.register(Collections.singleton(Route.DIRECT));
+        quota.renew();
+        assertTrue(quota.tryAcquire(Route.DIRECT));
+
+        time.addAndGet(MINUTE);
+        assertTrue("Spendable until the end of the next bucket", quota.tryAcquire(Route.DIRECT));
+
+        time.addAndGet(MINUTE);
+        assertFalse("Expired", quota.tryAcquire(Route.DIRECT));
+
+        // both unused requests are given back to the network
+        quota.renew();
+        assertTrue(quota.tryAcquire(Route.DIRECT));
+        assertTrue(quota.tryAcquire(Route.DIRECT));
+        assertFalse(quota.tryAcquire(Route.DIRECT));
+    }
+
+    @Test
+    public void slidingWindow() {
+        ClusterQuota quota = newQuota(4, 4);
+        quota.register(Collections.singleton(Route.DIRECT));
+        quota.renew();
+        for (int i = 0; i < 4; i++) {
+            assertTrue(quota.tryAcquire(Route.DIRECT));
+        }
+
+        // a fixed window would start over at the 10 minutes
+        time.addAndGet(10 * MINUTE);
+        quota.renew();
+        assertFalse(quota.tryAcquire(Route.DIRECT));
+
+        time.addAndGet(MINUTE);
+        quota.renew();
+        assertFalse("Lease could be spent until the end of the next bucket", quota.tryAcquire(Route.DIRECT));
+
+        time.addAndGet(MINUTE);
+        quota.renew();
+        assertTrue(quota.tryAcquire(Route.DIRECT));
+    }
+
+    @Test
+    public void rateLimitedForWholeNetwork() {
+        ClusterQuota first = newQuota(10, 4);
+        ClusterQuota second = newQuota(10, 4);
+        first.register(Collections.singleton(Route.DIRECT));
+        first.renew();
+        assertTrue(first.tryAcquire(Route.DIRECT));
+
+        first.markRateLimited(Route.DIRECT);
+        assertFalse("Lease dropped", first.tryAcquire(Route.DIRECT));
+
+        runTasks();
+        second.register(Collections.singleton(Route.DIRECT));
+        second.renew();
+        assertFalse(second.tryAcquire(Route.DIRECT));
+    }
+
+    private ClusterQuota newQuota(int limit, int leaseSize) {
+        return new ClusterQuota(storage, NOPLogger.NOP_LOGGER, "default", limit, leaseSize, tasks::add, time::get);
+    }
+
+    private void runTasks() {
+        List<Runnable> pending = new ArrayList<>(tasks);
+        tasks.clear();
+        pending.forEach(Runnable::run);
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2021 <Your name and contributors>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.mojang;
+
+import com.github.games647.craftapi.model.Profile;
+import com.github.games647.craftapi.model.auth.Verification;
+import com.github.games647.fastlogin.core.HashedWheelTimer;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MojangApiConnectorTest {
+
+    private MojangStandInServer server;
+    private MojangApiConnector connector;
+    private HashedWheelTimer timer;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MojangStandInServer();
+
+        timer = new HashedWheelTimer(LoggerFactory.getLogger(getClass()), Executors.defaultThreadFactory());
+        connector = new MojangApiConnector(LoggerFactory.getLogger(getClass()), Executors.defaultThreadFactory(),
+                timer);
+        connector.setBaseUrls(server.getUrl(), server.getUrl());
+        connector.setRoutes(Collections.emptyList(), Collections.emptyList(), 600);
+    }
+
+    @After
+    public void tearDown() {
+        connector.close();
+        timer.stop();
+        server.close();
+    }
+
+    @Test
+    public void findProfile() throws IOException {
+        UUID id = server.addProfile("Notch");
+
+        Optional<Profile> profile = connector.findProfile("notch");
+        assertTrue(profile.isPresent());
+        assertEquals(id, profile.get().getId());
+        assertEquals("Notch", profile.get().getName());
+
+        assertFalse(connector.findProfile("jeb_").isPresent());
+    }
+
+    @Test
+    public void skipInvalidNames() throws IOException {
+        assertFalse(connector.findProfile("no spaces").isPresent());
+        assertEquals("Invalid names shouldn't be requested", 0, server.getRequests());
+    }
+
+    @Test
+    public void batchConcurrentLookups() throws Exception {
+        server.addProfile("Notch");
+        server.addProfile("jeb_");
+        server.setLatency(20);
+        connector.setBatchWindow(200);
+
+        CompletableFuture<Optional<Profile>> first = lookupAsync("Notch");
+        CompletableFuture<Optional<Profile>> second = lookupAsync("jeb_");
+        CompletableFuture<Optional<Profile>> third = lookupAsync("Dinnerbone");
+
+        assertTrue(first.get().isPresent());
+        assertTrue(second.get().isPresent());
+        assertFalse(third.get().isPresent());
+        assertEquals("Names should be resolved using a single bulk request", 1, server.getRequests());
+    }
+
+    @Test
+    public void batchSharesRouteBudget() throws Exception {
+        server.addProfile("Notch");
+        server.addProfile("jeb_");
+        connector.setRoutes(Collections.emptyList(), Collections.emptyList(), 2);
+        connector.setBatchWindow(200);
+
+        CompletableFuture<Optional<Profile>> first = lookupAsync("Notch");
+        CompletableFuture<Optional<Profile>> second = lookupAsync("jeb_");
+        assertTrue(first.get().isPresent());
+        assertTrue(second.get().isPresent());
+
+        // the bulk request took one permit of the same budget as the single lookups
+        connector.setBatchWindow(0);
+        assertFalse(connector.findProfile("Dinnerbone").isPresent());
+        try {
+            connector.findProfile("Grumm");
+            fail("The budget should be used up by the bulk and the single request");
+        } catch (RateLimitReachedException expected) {
+            assertEquals(2, server.getRequests());
+        }
+    }
+
+    @Test
+    public void findNameUsesSessionBudget() throws IOException {
+        UUID id = server.addProfile("Notch");
+        connector.setRoutes(Collections.emptyList(), Collections.emptyList(), 1);
+        assertTrue(connector.findProfile("Notch").isPresent());
+
+        // the API budget is used up, but the name is looked up on the session server
+        assertEquals(Optional.of("Notch"), connector.findName(id, 0));
+        try {
+            connector.findName(id, 0);
+            fail("The session budget should be used up");
+        } catch (RateLimitReachedException expected) {
+            assertEquals(2, server.getRequests());
+        }
+    }
+
+    @Test
+    public void sessionVerificationsReduceSpareRequests() throws Exception {
+        UUID id = server.addProfile("Notch");
+        server.join("Notch", "abc");
+        connector.setRoutes(Collections.emptyList(), Collections.emptyList(), 2);
+        assertTrue(connector.hasJoined("Notch", "abc", null).get().isPresent());
+
+        try {
+            connector.findName(id, 1);
+            fail("The verification should have used the spare request");
+        } catch (RateLimitReachedException expected) {
+            assertEquals(1, server.getRequests());
+        }
+
+        assertEquals(Optional.of("Notch"), connector.findName(id, 0));
+    }
+
+    @Test(expected = RateLimitReachedException.class)
+    public void rateLimited() throws IOException {
+        server.setRateLimit(0);
+        connector.findProfile("Notch");
+    }
+
+    @Test
+    public void deferredLookupDeadline() throws Exception {
+        server.addProfile("Notch");
+        connector.setRoutes(Collections.emptyList(), Collections.emptyList(), 1);
+        connector.setRetryQueue(200, Runnable::run);
+        assertTrue(connector.findProfile("Notch").isPresent());
+
+        long start = System.nanoTime();
+        try {
+            connector.getRetryQueue().submit("jeb_").get();
+            fail("The budget shouldn't free up within the deadline");
+        } catch (ExecutionException executionEx) {
+            assertTrue(executionEx.getCause() instanceof RateLimitReachedException);
+            assertTrue(System.nanoTime() - start >= 200_000_000);
+        }
+
+        assertEquals(1, server.getRequests());
+        assertEquals(0, connector.getRetryQueue().size());
+    }
+
+    @Test
+    public void failOverToNextEndpoint() throws Exception {
+        UUID id = server.addProfile("Notch");
+        server.join("Notch", "abc");
+
+        // nothing listens on this port
+        List<String> urls = Arrays.asList("http://127.0.0.1:1", server.getUrl());
+        connector.setEndpoints(urls, urls);
+
+        assertTrue(connector.findProfile("Notch").isPresent());
+        assertEquals(id, connector.hasJoined("Notch", "abc", null).get().get().getId());
+
+        EndpointList.Endpoint unavailable = connector.getSessionEndpoints().getEndpoints().get(0);
+        assertTrue(unavailable.getLatency() < 0);
+        assertTrue(connector.getSessionEndpoints().getEndpoints().get(1).getLatency() >= 0);
+    }
+
+    @Test
+    public void hasJoined() throws Exception {
+        UUID id = server.addProfile("Notch");
+        server.join("Notch", "abc");
+
+        Optional<Verification> verification = connector.hasJoined("Notch", "abc", null).get();
+        assertTrue(verification.isPresent());
+        assertEquals(id, verification.get().getId());
+        assertEquals(1, verification.get().getProperties().length);
+
+        assertFalse("Wrong server hash", connector.hasJoined("Notch", "def", null).get().isPresent());
+    }
+
+    @Test
+    public void circuitBreakerFailsFast() throws Exception {
+        server.setErrorRate(1);
+        connector.setCircuitBreaker(2, 50, 1_000, 60_000);
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                connector.findProfile("Notch");
+                fail("Server errors should fail");
+            } catch (CircuitOpenException circuitEx) {
+                fail("Opened too early");
+            } catch (IOException expected) {
+                // server error
+            }
+        }
+
+        try {
+            connector.findProfile("Notch");
+            fail("Circuit should be open");
+        } catch (CircuitOpenException expected) {
+            assertEquals("No request while open", 2, server.getRequests());
+        }
+    }
+
+    private CompletableFuture<Optional<Profile>> lookupAsync(String name) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return connector.findProfile(name);
+            } catch (IOException ioEx) {
+                throw new IllegalStateException(ioEx);
+            }
+        });
+    }
+}
@@ -0,0 +1,297 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2021 <Your name and contributors>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.mojang;
+
+import com.github.games647.craftapi.UUIDAdapter;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.SSLContext;
+
+/**
+ * Local stand-in for the Mojang API and session server. It implements the profile, bulk and UUID lookups as well as
+ * hasJoined, so tests and benchmarks can run the real request code offline. Latency, server errors and the rate-limit
+ * can be configured.
+ *
+ * Use {@link #getUrl()} for both base URLs of {@link MojangApiConnector#setBaseUrls(String, String)}.
+ */
+public class MojangStandInServer implements Closeable {
+
+    private final Gson gson = new Gson();
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    // lowercase name -> profile
+    private final Map<String, JsonObject> profiles = new ConcurrentHashMap<>();
+    // server hash -> joined name
+    private final Map<String, String> sessions = new ConcurrentHashMap<>();
+
+    private final AtomicInteger requests = new AtomicInteger();
+
+    private volatile long latency;
+    private volatile double errorRate;
+    private volatile int rateLimit = Integer.MAX_VALUE;
+
+    public MojangStandInServer() throws IOException {
+        this(null);
+    }
+
+    /**
+     * @param sslContext serves HTTPS with this context or plain HTTP if null
+     * @throws IOException if the server cannot be bound
+     */
+    public MojangStandInServer(SSLContext sslContext) throws IOException {
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+        if (sslContext == null) {
+            server = HttpServer.create(address, 0);
+        } else {
+            HttpsServer httpsServer = HttpsServer.create(address, 0);
+            httpsServer.setHttpsConfigurator(new HttpsConfigurator(sslContext));
+            server = httpsServer;
+        }
+
+        server.setExecutor(executor);
+
+        server.createContext("/users/profiles/minecraft/", exchange -> handle(exchange, this::lookupName));
+        server.createContext("/profiles/minecraft", exchange -> handle(exchange, this::lookupBulk));
+        server.createContext("/session/minecraft/profile/", exchange -> handle(exchange, this::lookupId));
+        server.createContext("/session/minecraft/hasJoined", exchange -> handle(exchange, this::hasJoined));
+        server.createContext("/", exchange -> handle(exchange, request -> respond(request, 404, null)));
+        server.start();
+    }
+
+    /**
+     * @return base URL without a trailing slash
+     */
+    public String getUrl() {
+        String scheme = server instanceof HttpsServer ? "https://" : "http://";
+        return scheme + server.getAddress().getHostString() + ':' + server.getAddress().getPort();
+    }
+
+    public UUID addProfile(String name) {
+        UUID id = UUID.nameUUIDFromBytes(name.getBytes(StandardCharsets.UTF_8));
+        JsonObject profile = new JsonObject();
+        profile.addProperty("id", UUIDAdapter.toMojangId(id));
+        profile.addProperty("name", name);
+        profiles.put(name.toLowerCase(Locale.ROOT), profile);
+        return id;
+    }
+
+    /**
+     * Simulate the join request of the client.
+     *
+     * @param name player name of an added profile
+     * @param serverHash hash the server will verify
+     */
+    public void join(String name, String serverHash) {
+        sessions.put(serverHash, name);
+    }
+
+    /**
+     * @param latency delay in milliseconds before every response
+     */
+    public void setLatency(long latency) {
+        this.latency = latency;
+    }
+
+    /**
+     * @param errorRate probability between 0 and 1 to respond with a server error
+     */
+    public void setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * @param rateLimit number of requests before every further request is answered with 429
+     */
+    public void setRateLimit(int rateLimit) {
+        this.rateLimit = rateLimit;
+    }
+
+    /**
+     * @return number of received requests
+     */
+    public int getRequests() {
+        return requests.get();
+    }
+
+    private void handle(HttpExchange exchange, Handler handler) throws IOException {
+        try {
+            if (latency > 0) {
+                TimeUnit.MILLISECONDS.sleep(latency);
+            }
+
+            if (requests.incrementAndGet() > rateLimit) {
+                respond(exchange, 429, "{\"error\":\"TooManyRequestsException\"}");
+            } else if (ThreadLocalRandom.current().nextDouble() < errorRate) {
+                respond(exchange, 500, null);
+            } else {
+                handler.handle(exchange);
+            }
+        } catch (InterruptedException interruptedEx) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void lookupName(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        respondProfile(exchange, profiles.get(name.toLowerCase(Locale.ROOT)));
+    }
+
+    private void lookupBulk(HttpExchange exchange) throws IOException {
+        String[] names;
+        try (Reader reader = new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)) {
+            names = gson.fromJson(reader, String[].class);
+        }
+
+        JsonArray found = new JsonArray();
+        for (String name : names) {
+            JsonObject profile = profiles.get(name.toLowerCase(Locale.ROOT));
+            if (profile != null) {
+                found.add(profile);
+            }
+        }
+
+        respond(exchange, 200, found.toString());
+    }
+
+    private void lookupId(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        String id = path.substring(path.lastIndexOf('/') + 1);
+        for (JsonObject profile : profiles.values()) {
+            if (profile.get("id").getAsString().equals(id)) {
+                respondProfile(exchange, profile);
+                return;
+            }
+        }
+
+        respondProfile(exchange, null);
+    }
+
+    private void hasJoined(HttpExchange exchange) throws IOException {
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        String name = sessions.get(query.getOrDefault("serverId", ""));
+        JsonObject profile = profiles.get(query.getOrDefault("username", "").toLowerCase(Locale.ROOT));
+        if (profile == null || !profile.get("name").getAsString().equals(name)) {
+            respond(exchange, 204, null);
+            return;
+        }
+
+        JsonObject textures = new JsonObject();
+        textures.addProperty("name", "textures");
+        textures.addProperty("value", "e30=");
+        textures.addProperty("signature", "c2lnbmF0dXJl");
+
+        JsonArray properties = new JsonArray();
+        properties.add(textures);
+
+        JsonObject verification = new JsonObject();
+        verification.add("id", profile.get("id"));
+        verification.add("name", profile.get("name"));
+        verification.add("properties", properties);
+        verification.add("profileActions", new JsonArray());
+        respond(exchange, 200, verification.toString());
+    }
+
+    private void respondProfile(HttpExchange exchange, JsonObject profile) throws IOException {
+        if (profile == null) {
+            respond(exchange, 204, null);
+        } else {
+            respond(exchange, 200, profile.toString());
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int statusCode, String body) throws IOException {
+        if (body == null) {
+            exchange.sendResponseHeaders(statusCode, -1);
+            return;
+        }
+
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(statusCode, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) throws IOException {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null) {
+            return query;
+        }
+
+        for (String pair : rawQuery.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator > 0) {
+                query.put(URLDecoder.decode(pair.substring(0, separator), "UTF-8"),
+                        URLDecoder.decode(pair.substring(separator + 1), "UTF-8"));
+            }
+        }
+
+        return query;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private interface Handler {
+
+        void handle(HttpExchange exchange) throws IOException;
+    }
+}
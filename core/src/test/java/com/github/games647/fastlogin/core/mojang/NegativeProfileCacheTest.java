@@ -0,0 +1,92 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2021 <Your name and contributors>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.mojang;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class NegativeProfileCacheTest {
+
+    private static final long EXPIRE_TIME = TimeUnit.MINUTES.toMillis(10);
+
+    @Test
+    public void caseInsensitive() {
+        NegativeProfileCache cache = new NegativeProfileCache(EXPIRE_TIME, 10);
+        cache.add("Notch");
+
+        assertTrue("Name not remembered", cache.contains("notch"));
+        assertFalse("Unknown name found", cache.contains("jeb_"));
+    }
+
+    @Test
+    public void remove() {
+        NegativeProfileCache cache = new NegativeProfileCache(EXPIRE_TIME, 10);
+        cache.add("Notch");
+        cache.add("jeb_");
+        cache.remove("NOTCH");
+
+        assertFalse("Removed name still present", cache.contains("Notch"));
+        assertTrue("Other name removed too", cache.contains("jeb_"));
+    }
+
+    /**
+     * Filling up one generation should keep the previous one available
+     */
+    @Test
+    public void evictOldestGeneration() {
+        int size = 4;
+        NegativeProfileCache cache = new NegativeProfileCache(EXPIRE_TIME, size);
+        for (int i = 0; i < size; i++) {
+            cache.add("Player" + i);
+        }
+
+        assertTrue("Previous generation dropped too early", cache.contains("Player0"));
+        assertTrue("Current generation missing", cache.contains("Player3"));
+
+        // this starts a third generation
+        cache.add("Player4");
+        assertFalse("Oldest generation should be evicted", cache.contains("Player0"));
+        assertTrue("Previous generation dropped too early", cache.contains("Player3"));
+    }
+
+    @Test
+    public void expire() {
+        AtomicLong time = new AtomicLong();
+        NegativeProfileCache cache = new NegativeProfileCache(20, 10, time::get);
+        cache.add("Notch");
+
+        time.addAndGet(10);
+        assertTrue("Entry expired too early", cache.contains("Notch"));
+
+        time.addAndGet(15);
+        assertFalse("Entry should be expired", cache.contains("Notch"));
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2021 <Your name and contributors>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.mojang;
+
+import com.github.games647.fastlogin.core.HashedWheelTimer;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RequestHedgerTest {
+
+    private static final long SLOW_LATENCY = 2_000;
+
+    private MojangStandInServer primaryServer;
+    private MojangStandInServer hedgeServer;
+    private AsyncHttpClient client;
+    private HashedWheelTimer timer;
+
+    private final List<CompletableFuture<HttpResponse>> primaryRequests = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        primaryServer = new MojangStandInServer();
+        hedgeServer = new MojangStandInServer();
+        primaryServer.addProfile("Notch");
+        hedgeServer.addProfile("Notch");
+
+        client = new AsyncHttpClient(Executors.defaultThreadFactory());
+        timer = new HashedWheelTimer(LoggerFactory.getLogger(getClass()), Executors.defaultThreadFactory());
+    }
+
+    @After
+    public void tearDown() {
+        client.close();
+        timer.stop();
+        primaryServer.close();
+        hedgeServer.close();
+    }
+
+    @Test
+    public void hedgeSlowResponse() throws Exception {
+        RequestHedger hedger = new RequestHedger(timer, 95, 100);
+        warmUp(hedger);
+
+        primaryServer.setLatency(SLOW_LATENCY);
+        long start = System.nanoTime();
+        assertEquals(200, send(hedger).get(SLOW_LATENCY, TimeUnit.MILLISECONDS).getStatusCode());
+
+        long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("Hedge should answer before the slow response: " + duration, duration < SLOW_LATENCY);
+        assertEquals(1, hedgeServer.getRequests());
+        assertTrue("Slow request should be cancelled", primaryRequests.get(primaryRequests.size() - 1).isCancelled());
+    }
+
+    @Test
+    public void limitHedgesToBudget() throws Exception {
+        // 10 percent of the 20 warm up requests saved up two hedges
+        RequestHedger hedger = new RequestHedger(timer, 95, 10);
+        warmUp(hedger);
+
+        primaryServer.setLatency(SLOW_LATENCY);
+        for (int i = 0; i < 3; i++) {
+            send(hedger).get(SLOW_LATENCY * 2, TimeUnit.MILLISECONDS);
+        }
+
+        assertEquals("Only the saved up hedges should be sent", 2, hedgeServer.getRequests());
+    }
+
+    @Test
+    public void cancelBothRequests() throws Exception {
+        RequestHedger hedger = new RequestHedger(timer, 95, 100);
+        warmUp(hedger);
+
+        primaryServer.setLatency(SLOW_LATENCY);
+        hedgeServer.setLatency(SLOW_LATENCY);
+
+        // sent by the timer thread
+        List<CompletableFuture<HttpResponse>> hedgeRequests = new CopyOnWriteArrayList<>();
+        CompletableFuture<HttpResponse> result = hedger.send(this::sendPrimary, () -> {
+            CompletableFuture<HttpResponse> request = client.get(uri(hedgeServer), SLOW_LATENCY * 2);
+            hedgeRequests.add(request);
+            return request;
+        });
+
+        // wait until the hedge is sent
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SLOW_LATENCY);
+        while (hedgeRequests.isEmpty() && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+
+        result.cancel(false);
+        assertTrue(primaryRequests.get(primaryRequests.size() - 1).isCancelled());
+        assertEquals(1, hedgeRequests.size());
+        assertTrue("Outstanding hedge should be cancelled", hedgeRequests.get(0).isCancelled());
+    }
+
+    private void warmUp(RequestHedger hedger) throws Exception {
+        // no hedging until enough latencies are known
+        for (int i = 0; i < 20; i++) {
+            send(hedger).get(SLOW_LATENCY, TimeUnit.MILLISECONDS);
+        }
+
+        assertEquals(0, hedgeServer.getRequests());
+    }
+
+    private CompletableFuture<HttpResponse> send(RequestHedger hedger) {
+        return hedger.send(this::sendPrimary, () -> client.get(uri(hedgeServer), SLOW_LATENCY * 2));
+    }
+
+    private CompletableFuture<HttpResponse> sendPrimary() {
+        CompletableFuture<HttpResponse> request = client.get(uri(primaryServer), SLOW_LATENCY * 2);
+        primaryRequests.add(request);
+        return request;
+    }
+
+    private static URI uri(MojangStandInServer server) {
+        return URI.create(server.getUrl() + "/users/profiles/minecraft/Notch");
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2021 <Your name and contributors>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.mojang;
+
+import com.github.games647.craftapi.model.auth.Verification;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.UUID;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Allocation benchmarks of the response decoding. They measure the bytes allocated by the current thread, so they
+ * don't depend on the timing of the machine.
+ */
+public class ResponseDecoderAllocationTest {
+
+    private static final int ITERATIONS = 5_000;
+
+    private final ResponseDecoder decoder = new ResponseDecoder();
+
+    private com.sun.management.ThreadMXBean allocationBean;
+
+    @Before
+    public void setUp() {
+        java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadBean instanceof com.sun.management.ThreadMXBean);
+        allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+        Assume.assumeTrue(allocationBean.isThreadAllocatedMemorySupported());
+        allocationBean.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    /**
+     * Compare the allocated bytes per verification with binding it using Gson.
+     */
+    @Test
+    public void verificationAllocatesLessThanGson() throws IOException {
+        HttpResponse response = ResponseDecoderTest.response(ResponseDecoderTest.verificationJson());
+        Gson gson = new GsonBuilder().registerTypeAdapter(UUID.class, new UUIDTypeAdapter()).create();
+
+        long gsonBytes = measure(() -> {
+            try (Reader reader = new InputStreamReader(response.getBody(), StandardCharsets.UTF_8)) {
+                gson.fromJson(reader, Verification.class);
+            }
+        });
+
+        long decoderBytes = measure(() -> decoder.readVerification(response));
+
+        assertTrue("Decoder allocates " + decoderBytes + " bytes, Gson " + gsonBytes, decoderBytes < gsonBytes);
+    }
+
+    /**
+     * Compare only the readers using the same streaming parser. InputStreamReader allocates a charset decoder and a
+     * byte buffer for every response.
+     */
+    @Test
+    public void byteReaderAllocatesLessThanStreamReader() throws IOException {
+        byte[] json = Base64.getDecoder().decode(ResponseDecoderTest.texturesValue());
+        HttpResponse response = new HttpResponse(200, Collections.emptyMap(), json, 0, json.length);
+
+        long streamBytes = measure(() -> ResponseDecoder.readTimestamp(
+                new InputStreamReader(response.getBody(), StandardCharsets.UTF_8)));
+        long byteReaderBytes = measure(() -> ResponseDecoder.readTimestamp(
+                new Utf8ByteReader(json, 0, json.length)));
+
+        assertTrue("Utf8ByteReader allocates " + byteReaderBytes + " bytes, InputStreamReader " + streamBytes,
+                byteReaderBytes < streamBytes);
+    }
+
+    /**
+     * Chunked bodies are decoded in place, so they should cost about the same as a body with a content length even
+     * if the data arrives in many small reads.
+     */
+    @Test
+    public void chunkedBodyAllocatesLikeFixedLength() throws IOException {
+        byte[] body = new byte[64 * 1_024];
+        Arrays.fill(body, (byte) 'a');
+
+        StringBuilder chunked = new StringBuilder("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n");
+        for (int offset = 0; offset < body.length; offset += 256) {
+            chunked.append("100\r\n").append(new String(body, offset, 256, StandardCharsets.ISO_8859_1)).append("\r\n");
+        }
+
+        byte[] chunkedResponse = chunked.append("0\r\n\r\n").toString().getBytes(StandardCharsets.ISO_8859_1);
+        byte[] fixedResponse = ("HTTP/1.1 200 OK\r\nContent-Length: " + body.length + "\r\n\r\n"
+                + new String(body, StandardCharsets.ISO_8859_1)).getBytes(StandardCharsets.ISO_8859_1);
+
+        long fixedBytes = measure(() -> parseInReads(fixedResponse));
+        long chunkedBytes = measure(() -> parseInReads(chunkedResponse));
+        assertTrue("Chunked parsing allocates " + chunkedBytes + " bytes, fixed length " + fixedBytes,
+                chunkedBytes < 2 * fixedBytes);
+    }
+
+    private static void parseInReads(byte[] response) throws IOException {
+        ResponseParser parser = new ResponseParser();
+        ByteBuffer read = ByteBuffer.wrap(response);
+        for (int offset = 0; offset < response.length; offset += 512) {
+            read.limit(Math.min(offset + 512, response.length)).position(offset);
+            parser.feed(read);
+        }
+
+        if (parser.toResponse().getBodyLength() != 64 * 1_024) {
+            throw new IOException("Unexpected body length");
+        }
+    }
+
+    /**
+     * @return allocated bytes per run after a warm up round
+     */
+    private long measure(Decoding decoding) throws IOException {
+        long threadId = Thread.currentThread().getId();
+        long allocated = 0;
+        for (int round = 0; round < 2; round++) {
+            long start = allocationBean.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < ITERATIONS; i++) {
+                decoding.run();
+            }
+
+            allocated = (allocationBean.getThreadAllocatedBytes(threadId) - start) / ITERATIONS;
+        }
+
+        return allocated;
+    }
+
+    private interface Decoding {
+
+        void run() throws IOException;
+    }
+}
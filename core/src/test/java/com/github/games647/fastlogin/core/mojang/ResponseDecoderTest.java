@@ -0,0 +1,133 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2021 <Your name and contributors>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.mojang;
+
+import com.github.games647.craftapi.model.Profile;
+import com.github.games647.craftapi.model.auth.Verification;
+import com.github.games647.craftapi.model.skin.SkinProperty;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ResponseDecoderTest {
+
+    private static final UUID ID = UUID.fromString("069a79f4-44e9-4726-a5be-fca90e38aaf5");
+    private static final String MOJANG_ID = "069a79f444e94726a5befca90e38aaf5";
+
+    private static final long TIMESTAMP = 1_600_000_000_000L;
+
+    private final ResponseDecoder decoder = new ResponseDecoder();
+
+    @Test
+    public void readProfile() throws IOException {
+        Profile profile = decoder.readProfile(response("{\"id\":\"" + MOJANG_ID + "\",\"name\":\"Notch\"}"));
+        assertEquals(ID, profile.getId());
+        assertEquals("Notch", profile.getName());
+    }
+
+    @Test
+    public void readProfilesSkipsFlags() throws IOException {
+        List<Profile> profiles = decoder.readProfiles(response("[{\"id\":\"" + MOJANG_ID + "\",\"name\":\"Notch\","
+                + "\"legacy\":true,\"demo\":false},{\"name\":\"jeb_\",\"id\":\"" + MOJANG_ID + "\"}]"));
+        assertEquals(2, profiles.size());
+        assertEquals("jeb_", profiles.get(1).getName());
+    }
+
+    @Test
+    public void readVerification() throws IOException {
+        Verification verification = decoder.readVerification(response(verificationJson()));
+        assertEquals(ID, verification.getId());
+        assertEquals("Notch", verification.getName());
+
+        SkinProperty[] properties = verification.getProperties();
+        assertEquals(1, properties.length);
+        assertEquals(texturesValue(), properties[0].getValue());
+        assertEquals(signature(), properties[0].getSignature());
+    }
+
+    @Test
+    public void emptyProfile() throws IOException {
+        assertNull(decoder.readProfile(response("")));
+    }
+
+    @Test
+    public void decodeMultiByteCharacters() throws IOException {
+        String text = "aä€😀b";
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+
+        // single char reads to split the surrogate pair
+        Reader reader = new Utf8ByteReader(bytes, 0, bytes.length);
+        StringBuilder builder = new StringBuilder();
+        char[] chars = new char[1];
+        while (reader.read(chars, 0, 1) > 0) {
+            builder.append(chars[0]);
+        }
+
+        assertEquals(text, builder.toString());
+    }
+
+    @Test
+    public void readTimestamp() throws IOException {
+        byte[] json = Base64.getDecoder().decode(texturesValue());
+        assertEquals(TIMESTAMP, ResponseDecoder.readTimestamp(new Utf8ByteReader(json, 0, json.length)));
+    }
+
+    static HttpResponse response(String body) {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        return new HttpResponse(200, Collections.emptyMap(), bytes, 0, bytes.length);
+    }
+
+    static String verificationJson() {
+        return "{\"id\":\"" + MOJANG_ID + "\",\"name\":\"Notch\",\"properties\":[{\"name\":\"textures\","
+                + "\"value\":\"" + texturesValue() + "\",\"signature\":\"" + signature() + "\"}],"
+                + "\"profileActions\":[]}";
+    }
+
+    static String texturesValue() {
+        String textures = "{\"timestamp\":" + TIMESTAMP + ",\"profileId\":\"" + MOJANG_ID + "\","
+                + "\"profileName\":\"Notch\",\"signatureRequired\":true,\"textures\":{\"SKIN\":{\"url\":"
+                + "\"http://textures.minecraft.net/texture/"
+                + "292009a4925b58f02c77dadc3ecef07ea4c7472f64e0fdc32ce5522489362680\"}}}";
+        return Base64.getEncoder().encodeToString(textures.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String signature() {
+        byte[] signature = new byte[512];
+        Arrays.fill(signature, (byte) 42);
+        return Base64.getEncoder().encodeToString(signature);
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2021 <Your name and contributors>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.mojang;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ResponseParserTest {
+
+    private static final String CHUNKED = "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n"
+            + "5;name=value\r\nhello\r\n1\r\n \r\n5\r\nworld\r\n0\r\nTrailer: x\r\n\r\n";
+
+    @Test
+    public void decodeChunksInSingleBytes() throws IOException {
+        byte[] response = CHUNKED.getBytes(StandardCharsets.ISO_8859_1);
+        ResponseParser parser = new ResponseParser();
+        for (int i = 0; i < response.length; i++) {
+            boolean complete = parser.feed(ByteBuffer.wrap(response, i, 1));
+            assertEquals("Complete after byte " + i, i == response.length - 1, complete);
+        }
+
+        assertEquals("hello world", readBody(parser.toResponse()));
+        assertTrue(parser.isKeepAlive());
+    }
+
+    @Test
+    public void decodeChunksAtOnce() throws IOException {
+        ResponseParser parser = new ResponseParser();
+        assertTrue(parser.feed(ByteBuffer.wrap(CHUNKED.getBytes(StandardCharsets.ISO_8859_1))));
+        assertEquals("hello world", readBody(parser.toResponse()));
+    }
+
+    @Test
+    public void rejectReuseWithTrailingData() throws IOException {
+        ResponseParser parser = new ResponseParser();
+        assertTrue(parser.feed(ByteBuffer.wrap((CHUNKED + "HTTP/1.1").getBytes(StandardCharsets.ISO_8859_1))));
+        assertEquals("hello world", readBody(parser.toResponse()));
+        assertFalse(parser.isKeepAlive());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectMalformedChunkSize() throws IOException {
+        String response = "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\nxyz\r\n";
+        new ResponseParser().feed(ByteBuffer.wrap(response.getBytes(StandardCharsets.ISO_8859_1)));
+    }
+
+    private static String readBody(HttpResponse response) throws IOException {
+        byte[] body = new byte[response.getBodyLength()];
+        response.getBody().read(body, 0, body.length);
+        return new String(body, StandardCharsets.ISO_8859_1);
+    }
+}
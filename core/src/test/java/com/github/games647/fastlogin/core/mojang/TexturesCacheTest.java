@@ -0,0 +1,101 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2021 <Your name and contributors>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.mojang;
+
+import com.github.games647.craftapi.model.skin.SkinProperty;
+import com.github.games647.fastlogin.core.HashedWheelTimer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TexturesCacheTest {
+
+    private HashedWheelTimer timer;
+
+    @Before
+    public void setUp() {
+        timer = new HashedWheelTimer(LoggerFactory.getLogger(getClass()), Executors.defaultThreadFactory());
+    }
+
+    @After
+    public void tearDown() {
+        timer.stop();
+    }
+
+    @Test
+    public void keepNewest() {
+        TexturesCache cache = new TexturesCache(timer, 60, 10);
+        UUID id = UUID.randomUUID();
+
+        SkinProperty newer = createProperty(2_000);
+        cache.put(id, newer);
+
+        // a delayed response of an older join
+        cache.put(id, createProperty(1_000));
+        assertSame(newer, cache.get(id).get());
+
+        SkinProperty newest = createProperty(3_000);
+        cache.put(id, newest);
+        assertSame(newest, cache.get(id).get());
+    }
+
+    @Test
+    public void evictOldest() {
+        TexturesCache cache = new TexturesCache(timer, 60, 2);
+        UUID oldest = UUID.randomUUID();
+        UUID older = UUID.randomUUID();
+        cache.put(oldest, createProperty(1_000));
+        cache.put(older, createProperty(1_000));
+
+        // rewriting an existing player doesn't need room
+        cache.put(older, createProperty(2_000));
+        assertTrue(cache.get(oldest).isPresent());
+
+        UUID id = UUID.randomUUID();
+        SkinProperty property = createProperty(1_000);
+        cache.put(id, property);
+        assertSame(property, cache.get(id).get());
+        assertTrue(cache.get(older).isPresent());
+        assertFalse("Oldest player should make room for the new one", cache.get(oldest).isPresent());
+    }
+
+    private static SkinProperty createProperty(long timestamp) {
+        String json = "{\"timestamp\":" + timestamp + ",\"textures\":{}}";
+        String value = Base64.getEncoder().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+        return new SkinProperty(value, "signature");
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2021 <Your name and contributors>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.shared;
+
+import com.github.games647.fastlogin.core.AsyncScheduler;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Test;
+import org.slf4j.helpers.NOPLogger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class InFlightLoginsTest {
+
+    private final AsyncScheduler scheduler = new AsyncScheduler(NOPLogger.NOP_LOGGER, Executors.defaultThreadFactory());
+
+    @After
+    public void shutdown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void cancelOnClose() {
+        InFlightLogins<String> logins = new InFlightLogins<>(scheduler);
+
+        LoginDeadline deadline = new LoginDeadline(30_000);
+        logins.start("127.0.0.1:25565", deadline, () -> true);
+
+        CompletableFuture<Void> request = new CompletableFuture<>();
+        logins.track("127.0.0.1:25565", request);
+
+        assertTrue(logins.cancel("127.0.0.1:25565"));
+        assertTrue(deadline.isCancelled());
+        assertTrue(request.isCancelled());
+        assertEquals(1, logins.getCancelled());
+        assertEquals(0, logins.size());
+    }
+
+    @Test
+    public void finishedWorkIsNotCancelled() {
+        InFlightLogins<String> logins = new InFlightLogins<>(scheduler);
+        logins.start("127.0.0.1:25565", new LoginDeadline(30_000), () -> true);
+
+        CompletableFuture<Void> request = new CompletableFuture<>();
+        logins.track("127.0.0.1:25565", request);
+        request.complete(null);
+
+        assertTrue(logins.cancel("127.0.0.1:25565"));
+        assertFalse(request.isCancelled());
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2021 <Your name and contributors>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.shared;
+
+import com.github.games647.fastlogin.core.shared.LoginPipeline.Stage;
+
+import net.md_5.bungee.config.Configuration;
+
+import org.junit.Test;
+import org.slf4j.helpers.NOPLogger;
+
+import static org.junit.Assert.assertEquals;
+
+public class LoginPipelineTest {
+
+    @Test
+    public void configuredLimits() {
+        Configuration config = new Configuration();
+        config.set("login-stages.rate-limit.concurrency", 4);
+        config.set("login-stages.encryption.queue", 32);
+
+        LoginPipeline pipeline = new LoginPipeline(NOPLogger.NOP_LOGGER, config);
+        assertEquals(4, pipeline.get(Stage.RATE_LIMIT).getConcurrency());
+        assertEquals(32, pipeline.get(Stage.ENCRYPTION).getCapacity());
+
+        // defaults for missing values
+        assertEquals(512, pipeline.get(Stage.RATE_LIMIT).getCapacity());
+        assertEquals(16, pipeline.get(Stage.ENCRYPTION).getConcurrency());
+    }
+}
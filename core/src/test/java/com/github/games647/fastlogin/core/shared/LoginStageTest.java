@@ -0,0 +1,84 @@
+/*
+ * SPDX-License-Identifier: MIT
+ *
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015-2021 <Your name and contributors>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.games647.fastlogin.core.shared;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.Test;
+import org.slf4j.helpers.NOPLogger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LoginStageTest {
+
+    private final Executor direct = Runnable::run;
+
+    @Test
+    public void slotHeldUntilCompletion() {
+        LoginStage stage = new LoginStage("mojang", NOPLogger.NOP_LOGGER, 1, 1);
+
+        CompletableFuture<String> request = new CompletableFuture<>();
+        CompletableFuture<String> first = stage.compose(() -> request, direct);
+        CompletableFuture<String> second = stage.supply(() -> "cracked", direct);
+        assertEquals(1, stage.getActive());
+        assertEquals(1, stage.getQueued());
+
+        try {
+            stage.supply(() -> "rejected", direct);
+            fail("Queue should be full");
+        } catch (RejectedExecutionException rejectedEx) {
+            assertEquals(1, stage.getRejected());
+        }
+
+        request.complete("premium");
+        assertEquals("premium", first.join());
+        assertEquals("cracked", second.join());
+        assertEquals(0, stage.getActive());
+        assertEquals(2, stage.getCompleted());
+    }
+
+    @Test
+    public void cancelPropagates() {
+        LoginStage stage = new LoginStage("session", NOPLogger.NOP_LOGGER, 1, 1);
+
+        CompletableFuture<String> request = new CompletableFuture<>();
+        CompletableFuture<String> running = stage.compose(() -> request, direct);
+        CompletableFuture<String> queued = stage.supply(() -> "unused", direct);
+
+        queued.cancel(false);
+        assertEquals(0, stage.getQueued());
+
+        running.cancel(false);
+        assertTrue(request.isCancelled());
+        assertEquals(0, stage.getActive());
+        assertFalse(stage.supply(() -> "next", direct).isCompletedExceptionally());
+    }
+}